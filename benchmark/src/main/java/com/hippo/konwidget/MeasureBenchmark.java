@@ -0,0 +1,110 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.konwidget;
+
+/*
+ * Created by Hippo on 10/18/2016.
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the measuring of {@link AdvImageView}, for every measure spec
+ * mode and every kind of aspect ratio, with and without content.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MeasureBenchmark {
+
+    @Param({"EXACTLY", "AT_MOST", "UNSPECIFIED"})
+    public String widthMode;
+
+    @Param({"EXACTLY", "AT_MOST", "UNSPECIFIED"})
+    public String heightMode;
+
+    // INVALID_ASPECT_RATIO, ASPECT_RATIO_OF_DRAWABLE and a fixed one
+    @Param({"-1", "0", "1.5"})
+    public float aspectRatio;
+
+    @Param({"true", "false"})
+    public boolean hasContent;
+
+    // Not final, or it may be folded
+    private int mWidthSpec;
+    private int mHeightSpec;
+    private int mContentWidth = 1920;
+    private int mContentHeight = 1080;
+    private int mMinSize = 0;
+    private int mMaxSize = 800;
+    private int mPadding = 8;
+    private int mSize = 137;
+
+    static int getMode(String mode) {
+        if ("EXACTLY".equals(mode)) {
+            return ImageSizing.EXACTLY;
+        } else if ("AT_MOST".equals(mode)) {
+            return ImageSizing.AT_MOST;
+        } else {
+            return ImageSizing.UNSPECIFIED;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        mWidthSpec = ImageSizing.makeMeasureSpec(720, getMode(widthMode));
+        mHeightSpec = ImageSizing.makeMeasureSpec(1280, getMode(heightMode));
+    }
+
+    @Benchmark
+    public long measure() {
+        return ImageSizing.measure(mWidthSpec, mHeightSpec,
+                hasContent, mContentWidth, mContentHeight, aspectRatio,
+                mMinSize, mMaxSize, mMinSize, mMaxSize,
+                mPadding, mPadding, mPadding, mPadding, 0, 0);
+    }
+
+    @Benchmark
+    public int resolveAdjustedSize() {
+        return ImageSizing.resolveAdjustedSize(mContentWidth, mMinSize, mMaxSize, mWidthSpec);
+    }
+
+    @Benchmark
+    public boolean isSizeAcceptable() {
+        return ImageSizing.isSizeAcceptable(mSize, mMinSize, mMaxSize, mWidthSpec);
+    }
+
+    @Benchmark
+    public int resolveSizeAndState() {
+        return ImageSizing.resolveSizeAndState(mContentWidth, mWidthSpec, 0);
+    }
+}
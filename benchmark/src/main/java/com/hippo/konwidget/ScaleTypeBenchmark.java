@@ -0,0 +1,98 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.konwidget;
+
+/*
+ * Created by Hippo on 10/18/2016.
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the transform of every scale type, which
+ * {@link AdvImageView} computes in layout. The content sizes
+ * cover every branch of every scale type.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScaleTypeBenchmark {
+
+    private static final int VIEW_WIDTH = 720;
+    private static final int VIEW_HEIGHT = 480;
+
+    @Param({"0", "1", "2", "3", "4", "5", "6", "7"})
+    public int scaleType;
+
+    // Relative to the view: no intrinsic size, the same size, smaller,
+    // larger, and larger with the other aspect ratios
+    @Param({"EMPTY", "FITS", "SMALLER", "LARGER", "WIDER", "TALLER"})
+    public String content;
+
+    private int mContentWidth;
+    private int mContentHeight;
+    private int mViewWidth;
+    private int mViewHeight;
+    private final float[] mOut = new float[4];
+
+    @Setup
+    public void setUp() {
+        mViewWidth = VIEW_WIDTH;
+        mViewHeight = VIEW_HEIGHT;
+        if ("EMPTY".equals(content)) {
+            mContentWidth = -1;
+            mContentHeight = -1;
+        } else if ("FITS".equals(content)) {
+            mContentWidth = VIEW_WIDTH;
+            mContentHeight = VIEW_HEIGHT;
+        } else if ("SMALLER".equals(content)) {
+            mContentWidth = VIEW_WIDTH / 3;
+            mContentHeight = VIEW_HEIGHT / 2;
+        } else if ("LARGER".equals(content)) {
+            mContentWidth = VIEW_WIDTH * 3;
+            mContentHeight = VIEW_HEIGHT * 2;
+        } else if ("WIDER".equals(content)) {
+            mContentWidth = 4000;
+            mContentHeight = 1000;
+        } else {
+            mContentWidth = 1000;
+            mContentHeight = 4000;
+        }
+    }
+
+    // The output array is a field, so writes to it are kept
+    @Benchmark
+    public int computeTransform() {
+        return ImageSizing.computeTransform(mContentWidth, mContentHeight,
+                mViewWidth, mViewHeight, scaleType, mOut);
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.konwidget;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.graphics.drawable.ColorDrawable;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+@RunWith(AndroidJUnit4.class)
+public class AdvImageViewTest {
+
+    private AdvImageView mView;
+    private Bitmap mBitmap;
+
+    @Before
+    public void setUp() {
+        mView = new AdvImageView(InstrumentationRegistry.getTargetContext());
+        mView.setDirectBitmap(true);
+        mBitmap = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+    }
+
+    @Test
+    public void testClearDirectBitmapByDrawable() {
+        mView.setImageBitmap(mBitmap);
+        assertSame(mBitmap, mView.getImageBitmap());
+        assertNull(mView.getDrawable());
+
+        mView.setImageDrawable(null);
+        assertNull(mView.getImageBitmap());
+        assertNull(mView.getDrawable());
+    }
+
+    @Test
+    public void testClearDirectBitmapByUri() {
+        mView.setImageBitmap(mBitmap);
+        assertSame(mBitmap, mView.getImageBitmap());
+
+        mView.setImageURI(null);
+        assertNull(mView.getImageBitmap());
+        assertNull(mView.getDrawable());
+    }
+
+    @Test
+    public void testUnchangedLayoutSkipsBounds() {
+        final CountingDrawable drawable = new CountingDrawable();
+        mView.setScaleType(AdvImageView.SCALE_TYPE_FIT_CENTER);
+        mView.setImageDrawable(drawable);
+        mView.layout(0, 0, 100, 100);
+        final int count = drawable.mSetBoundsCount;
+
+        for (int i = 0; i < 10; i++) {
+            mView.layout(0, 0, 100, 100);
+        }
+        assertEquals(count, drawable.mSetBoundsCount);
+
+        mView.layout(0, 0, 200, 100);
+        assertEquals(count + 1, drawable.mSetBoundsCount);
+    }
+
+    @Test
+    public void testClearedContentConfiguresAgain() {
+        final CountingDrawable drawable = new CountingDrawable();
+        mView.setScaleType(AdvImageView.SCALE_TYPE_FIT_CENTER);
+        mView.setImageDrawable(drawable);
+        mView.layout(0, 0, 100, 100);
+        assertEquals(new Rect(0, 0, 10, 10), drawable.getBounds());
+
+        mView.setImageDrawable(null);
+        drawable.setBounds(0, 0, 1, 1);
+        mView.setImageDrawable(drawable);
+        assertEquals(new Rect(0, 0, 10, 10), drawable.getBounds());
+    }
+
+    private static final class CountingDrawable extends ColorDrawable {
+        private int mSetBoundsCount;
+
+        @Override
+        public void setBounds(int left, int top, int right, int bottom) {
+            mSetBoundsCount++;
+            super.setBounds(left, top, right, bottom);
+        }
+
+        @Override
+        public int getIntrinsicWidth() {
+            return 10;
+        }
+
+        @Override
+        public int getIntrinsicHeight() {
+            return 10;
+        }
+    }
+}
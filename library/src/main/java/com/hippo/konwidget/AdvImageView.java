@@ -20,21 +20,23 @@ package com.hippo.konwidget;
  * Created by Hippo on 8/21/2016.
  */
 
-import android.content.ContentResolver;
+import android.annotation.TargetApi;
 import android.content.Context;
-import android.content.pm.PackageManager;
 import android.content.res.ColorStateList;
+import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.content.res.TypedArray;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.ColorFilter;
 import android.graphics.Matrix;
+import android.graphics.Paint;
 import android.graphics.PixelFormat;
 import android.graphics.PorterDuff;
 import android.graphics.PorterDuffColorFilter;
 import android.graphics.Rect;
 import android.graphics.RectF;
+import android.graphics.drawable.Animatable;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
@@ -45,19 +47,14 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.graphics.drawable.DrawableCompat;
 import android.support.v4.view.ViewCompat;
-import android.support.v7.content.res.AppCompatResources;
-import android.text.TextUtils;
 import android.util.AttributeSet;
+import android.util.DisplayMetrics;
 import android.util.Log;
-import android.util.TypedValue;
 import android.view.View;
 
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.io.InputStream;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
-import java.util.List;
+import java.util.Arrays;
 
 // android-7.0.0_r1
 
@@ -70,6 +67,12 @@ import java.util.List;
  * in {@link #setImageResource(int)}.
  * <p>
  * Add {@link #getAspectRatio()} and {@link #setAspectRatio(float)}.
+ * <p>
+ * Add {@link #setAsyncLoad(boolean)} to load images off the UI thread.
+ * <p>
+ * The sizing math run by measuring and layout, {@link ImageSizing},
+ * is checked not to allocate. Use {@link #getImageMatrix(Matrix)}
+ * to read the matrix without allocation.
  */
 public class AdvImageView extends View {
 
@@ -81,17 +84,50 @@ public class AdvImageView extends View {
     @Retention(RetentionPolicy.SOURCE)
     public @interface ScaleType {}
 
-    public static final int SCALE_TYPE_MATRIX = 0;
-    public static final int SCALE_TYPE_FIT_XY = 1;
-    public static final int SCALE_TYPE_FIT_START = 2;
-    public static final int SCALE_TYPE_FIT_CENTER = 3;
-    public static final int SCALE_TYPE_FIT_END = 4;
-    public static final int SCALE_TYPE_CENTER = 5;
-    public static final int SCALE_TYPE_CENTER_CROP = 6;
-    public static final int SCALE_TYPE_CENTER_INSIDE = 7;
+    public static final int SCALE_TYPE_MATRIX = ImageSizing.SCALE_TYPE_MATRIX;
+    public static final int SCALE_TYPE_FIT_XY = ImageSizing.SCALE_TYPE_FIT_XY;
+    public static final int SCALE_TYPE_FIT_START = ImageSizing.SCALE_TYPE_FIT_START;
+    public static final int SCALE_TYPE_FIT_CENTER = ImageSizing.SCALE_TYPE_FIT_CENTER;
+    public static final int SCALE_TYPE_FIT_END = ImageSizing.SCALE_TYPE_FIT_END;
+    public static final int SCALE_TYPE_CENTER = ImageSizing.SCALE_TYPE_CENTER;
+    public static final int SCALE_TYPE_CENTER_CROP = ImageSizing.SCALE_TYPE_CENTER_CROP;
+    public static final int SCALE_TYPE_CENTER_INSIDE = ImageSizing.SCALE_TYPE_CENTER_INSIDE;
+
+    @IntDef({DECODE_MODE_FULL, DECODE_MODE_SAMPLE, DECODE_MODE_EXACT, DECODE_MODE_TILED})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface DecodeMode {}
+
+    /**
+     * Decode the full image.
+     */
+    public static final int DECODE_MODE_FULL = 0;
+    /**
+     * Decode with the largest power-of-two sample size which keeps
+     * the image not smaller than the size it is drawn.
+     */
+    public static final int DECODE_MODE_SAMPLE = 1;
+    /**
+     * Decode as {@link #DECODE_MODE_SAMPLE}, then scale to exactly
+     * the size it is drawn.
+     */
+    public static final int DECODE_MODE_EXACT = 2;
+    /**
+     * Decode a base image which fits the view, then decode only
+     * the tiles in the visible area, at the sample size matched to the
+     * scale it's drawn with. It's for images far larger than the view
+     * zoomed with {@link #SCALE_TYPE_MATRIX} and {@link #setImageMatrix(Matrix)}.
+     * JPEG, PNG and WebP are supported, others are decoded as a whole.
+     */
+    public static final int DECODE_MODE_TILED = 3;
+
+    public static final float INVALID_ASPECT_RATIO = ImageSizing.INVALID_ASPECT_RATIO;
+    public static final float ASPECT_RATIO_OF_DRAWABLE = ImageSizing.ASPECT_RATIO_OF_DRAWABLE;
 
-    public static final float INVALID_ASPECT_RATIO = -1.0f;
-    public static final float ASPECT_RATIO_OF_DRAWABLE = 0.0f;
+    // Counts draws for verifying overdraw, only touched on the UI thread
+    private static boolean sCountOverdraw;
+    private static int sDrawCount;
+    private static int sOpaqueDrawCount;
+    private static int sOverdrawCount;
 
     private Context mContext;
 
@@ -110,12 +146,40 @@ public class AdvImageView extends View {
 
     // these are applied to the drawable
     private ColorFilter mColorFilter = null;
+    // The last filter created by setColorFilter(int, Mode)
+    private PorterDuffColorFilter mPorterDuffColorFilter = null;
+    private int mPorterDuffColor;
+    private PorterDuff.Mode mPorterDuffMode;
     private boolean mHasColorFilter = false;
     private int mAlpha = 255;
     private final int mViewAlphaScale = 256;
     private boolean mColorMod = false;
 
     private Drawable mDrawable = null;
+    // Drawn directly instead of mDrawable in direct bitmap mode
+    private Bitmap mBitmap = null;
+    private Paint mBitmapPaint = null;
+    // Where mBitmap is drawn before mDrawMatrix, as the bounds of mDrawable
+    private final Rect mBitmapBounds = new Rect();
+    private PorterDuffColorFilter mBitmapTintFilter = null;
+    private int mBitmapTintColor;
+    private PorterDuff.Mode mBitmapTintMode;
+    private boolean mDirectBitmap = false;
+
+    private ImageMetrics.Listener mMetricsListener;
+
+    private boolean mBakeTint = false;
+    // The options the current Uri is decoded with
+    private DecodeOptions mUriOptions = null;
+
+    private boolean mRasterizeVector = false;
+    // The rasterized vector drawable, and the size and the tint it's for
+    private Bitmap mRasterBitmap = null;
+    private Paint mRasterPaint = null;
+    private int mRasterWidth;
+    private int mRasterHeight;
+    private int mRasterTint;
+    private int mRasterLayoutDirection;
     private ColorStateList mDrawableTintList = null;
     private PorterDuff.Mode mDrawableTintMode = null;
     private boolean mHasDrawableTint = false;
@@ -126,18 +190,38 @@ public class AdvImageView extends View {
     private int mLevel = 0;
     private int mDrawableWidth;
     private int mDrawableHeight;
+    // The size of the image from its header while it's loading
+    private int mProbedWidth = -1;
+    private int mProbedHeight = -1;
     private Matrix mDrawMatrix = null;
+    // Reused by animateTransform()
+    private Matrix mAnimateMatrix = null;
 
     // Avoid allocations...
     private final RectF mTempSrc = new RectF();
     private final RectF mTempDst = new RectF();
+    private final float[] mTempValues = new float[9];
+    // Scale and translate from ImageSizing.computeTransform()
+    private final float[] mTransform = new float[4];
+    private final RectF mTempDirty = new RectF();
+    private final Rect mTempDirtyRect = new Rect();
+    private final BoundsState mBoundsState = new BoundsState();
+    private final MeasureCache mMeasureCache = new MeasureCache();
+    // Results of computeMeasuredSize()
+    private int mMeasuredWidthResult;
+    private int mMeasuredHeightResult;
 
     private boolean mCropToPadding;
 
     private int mBaseline = -1;
     private boolean mBaselineAlignBottom = false;
 
-    private static TypedValue sTempValue;
+    private boolean mAsyncLoad = false;
+    private boolean mProgressiveLoad = false;
+    @DecodeMode
+    private int mDecodeMode = DECODE_MODE_FULL;
+    private Drawable mPlaceholder = null;
+    private ImageLoader.Request mLoadRequest = null;
 
     public AdvImageView(Context context) {
         super(context);
@@ -207,6 +291,21 @@ public class AdvImageView extends View {
 
         mCropToPadding = a.getBoolean(R.styleable.AdvImageView_kon_cropToPadding, false);
 
+        mAsyncLoad = a.getBoolean(R.styleable.AdvImageView_kon_asyncLoad, false);
+
+        mProgressiveLoad = a.getBoolean(R.styleable.AdvImageView_kon_progressiveLoad, false);
+
+        //noinspection WrongConstant
+        mDecodeMode = a.getInt(R.styleable.AdvImageView_kon_decodeMode, DECODE_MODE_FULL);
+
+        mPlaceholder = a.getDrawable(R.styleable.AdvImageView_kon_placeholder);
+
+        mDirectBitmap = a.getBoolean(R.styleable.AdvImageView_kon_directBitmap, false);
+
+        mRasterizeVector = a.getBoolean(R.styleable.AdvImageView_kon_rasterizeVector, false);
+
+        mBakeTint = a.getBoolean(R.styleable.AdvImageView_kon_bakeTint, false);
+
         a.recycle();
     }
 
@@ -233,21 +332,62 @@ public class AdvImageView extends View {
                     mDrawableHeight = h;
                     // updates the matrix, which is dependent on the bounds
                     configureBounds();
+                    // The drawable may be anywhere now
+                    invalidate();
+                    return;
                 }
             }
-            /* we invalidate the whole view in this case because it's very
-             * hard to know where the drawable actually is. This is made
-             * complicated because of the offsets and transformations that
-             * can be applied. In theory we could get the drawable's bounds
-             * and run them through the transformation and offsets, but this
-             * is probably not worth the effort.
-             */
-            invalidate();
+            // Only invalidate where the drawable is drawn, animated
+            // drawables in large views would redraw the whole view every frame
+            invalidateDrawableArea(dr);
         } else {
             super.invalidateDrawable(dr);
         }
     }
 
+    /**
+     * Invalidates the dirty bounds of the drawable mapped through the draw matrix,
+     * the padding offsets and the crop-to-padding clip.
+     */
+    private void invalidateDrawableArea(Drawable dr) {
+        final RectF dirty = mTempDirty;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            dirty.set(getDirtyBounds(dr));
+        } else {
+            dirty.set(dr.getBounds());
+        }
+        if (mDrawMatrix != null) {
+            mDrawMatrix.mapRect(dirty);
+        }
+
+        final int pLeft = getPaddingLeft();
+        final int pTop = getPaddingTop();
+        dirty.offset(pLeft, pTop);
+
+        final Rect rect = mTempDirtyRect;
+        // Filtering may touch the pixels around
+        dirty.roundOut(rect);
+        rect.inset(-1, -1);
+
+        if (mCropToPadding) {
+            final int scrollX = getScrollX();
+            final int scrollY = getScrollY();
+            if (!rect.intersect(scrollX + pLeft, scrollY + pTop,
+                    scrollX + getWidth() - getPaddingRight(),
+                    scrollY + getHeight() - getPaddingBottom())) {
+                // Nothing visible changes
+                return;
+            }
+        }
+
+        invalidate(rect);
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static Rect getDirtyBounds(Drawable dr) {
+        return dr.getDirtyBounds();
+    }
+
     @Override
     public boolean hasOverlappingRendering() {
         final Drawable background = getBackground();
@@ -275,6 +415,12 @@ public class AdvImageView extends View {
      * Set aspect ratio, width/height. {@link #INVALID_ASPECT_RATIO} to
      * cancel aspect ratio. {@link #ASPECT_RATIO_OF_DRAWABLE} to
      * fit aspect ratio of drawable.
+     * <p>
+     * With {@link #ASPECT_RATIO_OF_DRAWABLE} in async mode, the size of
+     * a content or file image is read from its header, with EXIF orientation,
+     * by the loader thread before decoding pixels, or reused if it has been
+     * read before. The view is laid out again once with it while the
+     * placeholder is shown, so it doesn't jump when the image is loaded.
      */
     public void setAspectRatio(float aspectRatio) {
         if (!(aspectRatio >= ASPECT_RATIO_OF_DRAWABLE)) {
@@ -360,8 +506,14 @@ public class AdvImageView extends View {
     }
 
     /** Return the view's drawable, or null if no drawable has been assigned.
+     * <p>
+     * The bitmap of a returned image loaded by this view isn't reused
+     * after the view moves on, since the drawable may still be drawn elsewhere.
      */
     public Drawable getDrawable() {
+        if (mDrawable instanceof DecodedBitmapDrawable) {
+            ((DecodedBitmapDrawable) mDrawable).getDecodedBitmap().setShared();
+        }
         return mDrawable;
     }
 
@@ -370,7 +522,8 @@ public class AdvImageView extends View {
      *
      * <p class="note">This does Bitmap reading and decoding on the UI
      * thread, which can cause a latency hiccup.  If that's a concern,
-     * consider using {@link #setImageDrawable(android.graphics.drawable.Drawable)} or
+     * consider using {@link #setAsyncLoad(boolean)}, or
+     * {@link #setImageDrawable(android.graphics.drawable.Drawable)} or
      * {@link #setImageBitmap(android.graphics.Bitmap)} and
      * {@link android.graphics.BitmapFactory} instead.</p>
      *
@@ -379,17 +532,19 @@ public class AdvImageView extends View {
     public void setImageResource(@DrawableRes int resId) {
         // The resource configuration may have changed, so we should always
         // try to load the resource even if the resId hasn't changed.
-        final int oldWidth = mDrawableWidth;
-        final int oldHeight = mDrawableHeight;
+        // DrawableCache makes it cheap unless the configuration has changed.
+        final int oldWidth = getContentWidth();
+        final int oldHeight = getContentHeight();
 
+        cancelLoad();
         updateDrawable(null);
         mResource = resId;
         mUri = null;
 
         resolveUri();
 
-        if (oldWidth != mDrawableWidth || oldHeight != mDrawableHeight) {
-            requestLayout();
+        if (oldWidth != getContentWidth() || oldHeight != getContentHeight()) {
+            onContentSizeChanged();
         }
         invalidate();
     }
@@ -399,25 +554,29 @@ public class AdvImageView extends View {
      *
      * <p class="note">This does Bitmap reading and decoding on the UI
      * thread, which can cause a latency hiccup.  If that's a concern,
-     * consider using {@link #setImageDrawable(Drawable)} or
+     * consider using {@link #setAsyncLoad(boolean)}, or
+     * {@link #setImageDrawable(Drawable)} or
      * {@link #setImageBitmap(android.graphics.Bitmap)} and
      * {@link android.graphics.BitmapFactory} instead.</p>
      *
      * @param uri the Uri of an image, or {@code null} to clear the content
      */
     public void setImageURI(@Nullable Uri uri) {
-        if (mResource != 0 || (mUri != uri && (uri == null || mUri == null || !uri.equals(mUri)))) {
+        // A bitmap set in direct bitmap mode has no Uri, but it's still a change
+        if (mResource != 0 || mBitmap != null
+                || (mUri != uri && (uri == null || mUri == null || !uri.equals(mUri)))) {
+            cancelLoad();
             updateDrawable(null);
             mResource = 0;
             mUri = uri;
 
-            final int oldWidth = mDrawableWidth;
-            final int oldHeight = mDrawableHeight;
+            final int oldWidth = getContentWidth();
+            final int oldHeight = getContentHeight();
 
             resolveUri();
 
-            if (oldWidth != mDrawableWidth || oldHeight != mDrawableHeight) {
-                requestLayout();
+            if (oldWidth != getContentWidth() || oldHeight != getContentHeight()) {
+                onContentSizeChanged();
             }
             invalidate();
         }
@@ -430,22 +589,198 @@ public class AdvImageView extends View {
      *                 content
      */
     public void setImageDrawable(@Nullable Drawable drawable) {
-        if (mDrawable != drawable) {
+        if (mDrawable != drawable || mBitmap != null) {
+            final int oldWidth = getContentWidth();
+            final int oldHeight = getContentHeight();
+
+            cancelLoad();
             mResource = 0;
             mUri = null;
 
-            final int oldWidth = mDrawableWidth;
-            final int oldHeight = mDrawableHeight;
-
             updateDrawable(drawable);
 
-            if (oldWidth != mDrawableWidth || oldHeight != mDrawableHeight) {
-                requestLayout();
+            if (oldWidth != getContentWidth() || oldHeight != getContentHeight()) {
+                onContentSizeChanged();
             }
             invalidate();
         }
     }
 
+    /**
+     * Return whether {@link #setImageResource(int)} and {@link #setImageURI(Uri)}
+     * load the image off the UI thread.
+     *
+     * @see #setAsyncLoad(boolean)
+     */
+    public boolean isAsyncLoad() {
+        return mAsyncLoad;
+    }
+
+    /**
+     * Set whether {@link #setImageResource(int)} and {@link #setImageURI(Uri)}
+     * load the image off the UI thread. While loading, the placeholder is shown.
+     * If the view is rebound to another image before the load finishes,
+     * the stale result is discarded.
+     * <p>
+     * It only takes effect for subsequent images.
+     *
+     * @see #setPlaceholder(Drawable)
+     */
+    public void setAsyncLoad(boolean asyncLoad) {
+        mAsyncLoad = asyncLoad;
+    }
+
+    /**
+     * Return whether a low-resolution preview is shown before the image is loaded.
+     *
+     * @see #setProgressiveLoad(boolean)
+     */
+    public boolean isProgressiveLoad() {
+        return mProgressiveLoad;
+    }
+
+    /**
+     * Set whether to show a low-resolution preview of large content and file
+     * images in async mode, before the image is loaded. The preview is
+     * the EXIF thumbnail, or the image decoded with a far larger sample size.
+     * It has the same intrinsic size as the image, so swapping in
+     * the image doesn't cause a relayout. Images in the memory or disk cache
+     * are loaded without preview.
+     * <p>
+     * It only takes effect for subsequent images.
+     *
+     * @see #setAsyncLoad(boolean)
+     */
+    public void setProgressiveLoad(boolean progressiveLoad) {
+        mProgressiveLoad = progressiveLoad;
+    }
+
+    /**
+     * Return the listener of metrics of this view.
+     *
+     * @see #setMetricsListener(ImageMetrics.Listener)
+     */
+    @Nullable
+    public ImageMetrics.Listener getMetricsListener() {
+        return mMetricsListener;
+    }
+
+    /**
+     * Set a listener for the metrics of this view, called on the UI thread.
+     * Loads in async mode are reported once the image is delivered.
+     *
+     * @see ImageMetrics#addListener(ImageMetrics.Listener)
+     */
+    public void setMetricsListener(@Nullable ImageMetrics.Listener listener) {
+        mMetricsListener = listener;
+    }
+
+    // It's called in the constructor of View, before fields are initialized
+    private boolean isMetricsActive() {
+        return mMetricsListener != null || ImageMetrics.isActive();
+    }
+
+    private void reportMetric(@ImageMetrics.Metric int metric, long value) {
+        ImageMetrics.report(this, mMetricsListener, metric, value);
+    }
+
+    private void reportLoad(LoadMetrics metrics) {
+        reportMetric(ImageMetrics.METRIC_RESOLVE_TIME, metrics.resolveNanos);
+        if (metrics.decodeNanos != 0) {
+            reportMetric(ImageMetrics.METRIC_DECODE_TIME, metrics.decodeNanos);
+        }
+        if (metrics.decodedBytes != 0) {
+            reportMetric(ImageMetrics.METRIC_DECODED_BYTES, metrics.decodedBytes);
+        }
+    }
+
+    @Override
+    public void requestLayout() {
+        super.requestLayout();
+        if (isMetricsActive()) {
+            reportMetric(ImageMetrics.METRIC_REQUEST_LAYOUT, 1);
+        }
+    }
+
+    @Override
+    public void invalidate() {
+        super.invalidate();
+        if (isMetricsActive()) {
+            reportMetric(ImageMetrics.METRIC_INVALIDATE, 1);
+        }
+    }
+
+    @Override
+    public void invalidate(Rect dirty) {
+        super.invalidate(dirty);
+        if (isMetricsActive()) {
+            reportMetric(ImageMetrics.METRIC_INVALIDATE, 1);
+        }
+    }
+
+    /**
+     * Return how images from Uri are decoded.
+     *
+     * @see #setDecodeMode(int)
+     */
+    @DecodeMode
+    public int getDecodeMode() {
+        return mDecodeMode;
+    }
+
+    /**
+     * Set how {@link #setImageURI(Uri)} decodes content and file images.
+     * Other than {@link #DECODE_MODE_FULL}, the image is decoded for
+     * the size of this view and the scale type, or the size of the screen
+     * if this view isn't laid out yet. The drawable still reports the size
+     * of the full image as intrinsic size.
+     * <p>
+     * It only takes effect for subsequent images.
+     *
+     * @param decodeMode one of {@link #DECODE_MODE_FULL}, {@link #DECODE_MODE_SAMPLE},
+     *                   {@link #DECODE_MODE_EXACT} and {@link #DECODE_MODE_TILED}
+     */
+    public void setDecodeMode(@DecodeMode int decodeMode) {
+        mDecodeMode = decodeMode;
+    }
+
+    /**
+     * Return the drawable shown while loading.
+     *
+     * @see #setPlaceholder(Drawable)
+     */
+    @Nullable
+    public Drawable getPlaceholder() {
+        return mPlaceholder;
+    }
+
+    /**
+     * Set the drawable to show while the image is loading in async mode.
+     * {@link #getDrawable()} returns it until the image is loaded.
+     * The placeholder must not be shared with other views.
+     *
+     * @param placeholder the placeholder, or {@code null} to show nothing
+     *
+     * @see #setAsyncLoad(boolean)
+     */
+    public void setPlaceholder(@Nullable Drawable placeholder) {
+        if (mPlaceholder != placeholder) {
+            final boolean showing = mLoadRequest != null && mDrawable == mPlaceholder;
+            mPlaceholder = placeholder;
+            if (showing) {
+                final int oldWidth = getContentWidth();
+                final int oldHeight = getContentHeight();
+
+                updateDrawable(placeholder);
+
+                if (oldWidth != getContentWidth() || oldHeight != getContentHeight()) {
+                    onContentSizeChanged();
+                }
+                invalidate();
+            }
+        }
+    }
+
     /**
      * Applies a tint to the image drawable. Does not modify the current tint
      * mode, which is {@link PorterDuff.Mode#SRC_IN} by default.
@@ -464,6 +799,7 @@ public class AdvImageView extends View {
         mHasDrawableTint = true;
 
         applyImageTint();
+        rebakeIfNeeded();
     }
 
     /**
@@ -492,6 +828,7 @@ public class AdvImageView extends View {
         mHasDrawableTintMode = true;
 
         applyImageTint();
+        rebakeIfNeeded();
     }
 
     /**
@@ -505,7 +842,13 @@ public class AdvImageView extends View {
     }
 
     private void applyImageTint() {
-        if (mDrawable != null && (mHasDrawableTint || mHasDrawableTintMode)) {
+        mRasterBitmap = null;
+
+        if (mBitmap != null) {
+            updateBitmapPaint();
+        }
+
+        if (mDrawable != null && (mHasDrawableTint || mHasDrawableTintMode) && !isFilterBaked()) {
             mDrawable = mDrawable.mutate();
 
             if (mHasDrawableTint) {
@@ -526,13 +869,138 @@ public class AdvImageView extends View {
 
     /**
      * Sets a Bitmap as the content of this AdvImageView.
+     * <p>
+     * In direct bitmap mode, the bitmap is drawn without
+     * a {@link BitmapDrawable} and {@link #getDrawable()} returns {@code null}.
      *
      * @param bm The bitmap to set
+     *
+     * @see #setDirectBitmap(boolean)
      */
     public void setImageBitmap(Bitmap bm) {
-        // if this is used frequently, may handle bitmaps explicitly
-        // to reduce the intermediate drawable object
-        setImageDrawable(new BitmapDrawable(mContext.getResources(), bm));
+        if (mDirectBitmap) {
+            setBitmap(bm);
+        } else {
+            setImageDrawable(new BitmapDrawable(mContext.getResources(), bm));
+        }
+    }
+
+    private void setBitmap(@Nullable Bitmap bm) {
+        if (mBitmap == bm && mDrawable == null) {
+            return;
+        }
+
+        final int oldWidth = getContentWidth();
+        final int oldHeight = getContentHeight();
+
+        cancelLoad();
+        mResource = 0;
+        mUri = null;
+
+        updateDrawable(null);
+
+        if (bm != null) {
+            mBitmap = bm;
+            if (mBitmapPaint == null) {
+                mBitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG | Paint.DITHER_FLAG);
+            }
+            // Scale as BitmapDrawable does
+            final int density = mContext.getResources().getDisplayMetrics().densityDpi;
+            mDrawableWidth = bm.getScaledWidth(density);
+            mDrawableHeight = bm.getScaledHeight(density);
+            updateBitmapPaint();
+            configureBounds();
+        }
+
+        if (oldWidth != getContentWidth() || oldHeight != getContentHeight()) {
+            onContentSizeChanged();
+        }
+        invalidate();
+    }
+
+    /**
+     * Return the bitmap drawn in direct bitmap mode, or {@code null}
+     * if the content isn't set by {@link #setImageBitmap(Bitmap)} in that mode.
+     *
+     * @see #setDirectBitmap(boolean)
+     */
+    @Nullable
+    public Bitmap getImageBitmap() {
+        return mBitmap;
+    }
+
+    /**
+     * Return whether bitmaps are drawn directly.
+     *
+     * @see #setDirectBitmap(boolean)
+     */
+    public boolean isDirectBitmap() {
+        return mDirectBitmap;
+    }
+
+    /**
+     * Set whether {@link #setImageBitmap(Bitmap)} draws the bitmap directly with
+     * the draw matrix, instead of wrapping it in a {@link BitmapDrawable}.
+     * It saves a drawable and the mutation for tint, color filter and alpha
+     * on every call. Tint, color filter and alpha still apply.
+     * <p>
+     * It only takes effect for subsequent bitmaps.
+     */
+    public void setDirectBitmap(boolean directBitmap) {
+        mDirectBitmap = directBitmap;
+    }
+
+    /**
+     * Return whether vector drawable resources are drawn from rasterized bitmaps.
+     *
+     * @see #setRasterizeVector(boolean)
+     */
+    public boolean isRasterizeVector() {
+        return mRasterizeVector;
+    }
+
+    /**
+     * Set whether to draw static vector drawables set by {@link #setImageResource(int)}
+     * from bitmaps, instead of rendering the paths on every draw.
+     * The bitmap is rasterized at the size the vector is drawn in pixels, and shared
+     * by the views which show the same resource at the same size, tint and alpha.
+     * It's rasterized again once the size, the tint or the state changes.
+     * Vectors with a color filter are rendered as usual.
+     */
+    public void setRasterizeVector(boolean rasterizeVector) {
+        if (mRasterizeVector != rasterizeVector) {
+            mRasterizeVector = rasterizeVector;
+            mRasterBitmap = null;
+            invalidate();
+        }
+    }
+
+    /**
+     * Applies tint, color filter and alpha to the paint of the bitmap,
+     * as {@link BitmapDrawable} does.
+     */
+    private void updateBitmapPaint() {
+        final Paint paint = mBitmapPaint;
+
+        paint.setAlpha(mAlpha * mViewAlphaScale >> 8);
+
+        if (mHasColorFilter && mColorFilter != null) {
+            // Color filter overrides tint
+            paint.setColorFilter(mColorFilter);
+        } else if (mDrawableTintList != null) {
+            final PorterDuff.Mode mode = mDrawableTintMode != null
+                    ? mDrawableTintMode : PorterDuff.Mode.SRC_IN;
+            final int color = mDrawableTintList.getColorForState(
+                    getDrawableState(), mDrawableTintList.getDefaultColor());
+            if (mBitmapTintFilter == null || mBitmapTintColor != color || mBitmapTintMode != mode) {
+                mBitmapTintFilter = new PorterDuffColorFilter(color, mode);
+                mBitmapTintColor = color;
+                mBitmapTintMode = mode;
+            }
+            paint.setColorFilter(mBitmapTintFilter);
+        } else {
+            paint.setColorFilter(null);
+        }
     }
 
     public void setImageState(int[] state, boolean merge) {
@@ -603,6 +1071,24 @@ public class AdvImageView extends View {
         return mDrawMatrix;
     }
 
+    /**
+     * Copies the view's optional matrix to the out matrix, without allocation.
+     * The out matrix is reset to identity if there is no matrix.
+     *
+     * @param out the matrix to hold the result
+     * @return the out matrix
+     *
+     * @see #getImageMatrix()
+     */
+    public Matrix getImageMatrix(@NonNull Matrix out) {
+        if (mDrawMatrix == null) {
+            out.reset();
+        } else {
+            out.set(mDrawMatrix);
+        }
+        return out;
+    }
+
     /**
      * Adds a transformation {@link Matrix} that is applied
      * to the view's drawable when it is drawn.  Allows custom scaling,
@@ -620,6 +1106,7 @@ public class AdvImageView extends View {
         if (matrix == null && !mMatrix.isIdentity() ||
                 matrix != null && !mMatrix.equals(matrix)) {
             mMatrix.set(matrix);
+            mBoundsState.reset();
             configureBounds();
             invalidate();
         }
@@ -652,7 +1139,7 @@ public class AdvImageView extends View {
     }
 
     private void resolveUri() {
-        if (mDrawable != null) {
+        if (mDrawable != null || mLoadRequest != null) {
             return;
         }
 
@@ -660,132 +1147,304 @@ public class AdvImageView extends View {
             return;
         }
 
-        Drawable d = null;
+        if (mResource == 0 && mUri == null) {
+            return;
+        }
+
+        final DecodeOptions options = mResource == 0 ? obtainDecodeOptions() : null;
+        mUriOptions = options;
+
+        final boolean metricsActive = isMetricsActive();
+        final long start = metricsActive ? System.nanoTime() : 0;
+
+        if (mAsyncLoad) {
+            // Skip the round trip if it's in memory
+            final Drawable cached = mResource == 0
+                    ? ImageLoader.getCached(mContext, mUri, options) : null;
+            if (cached != null) {
+                if (metricsActive) {
+                    reportMetric(ImageMetrics.METRIC_RESOLVE_TIME, System.nanoTime() - start);
+                }
+                updateDrawable(cached);
+            } else {
+                startLoad(options);
+            }
+            return;
+        }
+
+        Drawable d;
 
         if (mResource != 0) {
-            try {
-                d = AppCompatResources.getDrawable(mContext, mResource);
-            } catch (Exception e) {
-                Log.w(LOG_TAG, "Unable to find resource: " + mResource, e);
+            d = DrawableDecoder.decodeResource(mContext, mResource);
+            if (metricsActive) {
+                reportMetric(ImageMetrics.METRIC_DECODE_TIME, System.nanoTime() - start);
+            }
+            if (d == null) {
                 // Don't try again.
                 mUri = null;
             }
-        } else if (mUri != null) {
-            d = getDrawableFromUri(mUri);
+        } else {
+            final LoadMetrics metrics = metricsActive ? new LoadMetrics() : null;
+            d = ImageLoader.decodeUri(mContext, mUri, options, metrics);
+            if (metrics != null) {
+                reportLoad(metrics);
+            }
 
             if (d == null) {
                 Log.w(LOG_TAG, "resolveUri failed on bad bitmap uri: " + mUri);
                 // Don't try again.
                 mUri = null;
             }
-        } else {
-            return;
         }
 
         updateDrawable(d);
     }
 
-    private Drawable getDrawableFromUri(Uri uri) {
-        final String scheme = uri.getScheme();
-        if (ContentResolver.SCHEME_ANDROID_RESOURCE.equals(scheme)) {
-            try {
-                // Load drawable through Resources, to get the source density information
-                final OpenResourceIdResult r = getResourceId(uri);
-                return getDrawableFromId(r.r, r.id, mContext.getTheme());
-            } catch (Exception e) {
-                Log.w(LOG_TAG, "Unable to open content: " + uri, e);
-            }
-        } else if (ContentResolver.SCHEME_CONTENT.equals(scheme)
-                || ContentResolver.SCHEME_FILE.equals(scheme)) {
-            InputStream stream = null;
-            try {
-                stream = mContext.getContentResolver().openInputStream(uri);
-                return Drawable.createFromResourceStream(getResources(), null, stream, null);
-            } catch (Exception e) {
-                Log.w(LOG_TAG, "Unable to open content: " + uri, e);
-            } finally {
-                if (stream != null) {
-                    try {
-                        stream.close();
-                    } catch (IOException e) {
-                        Log.w(LOG_TAG, "Unable to close content: " + uri, e);
-                    }
-                }
-            }
-        } else {
-            return Drawable.createFromPath(uri.toString());
+    /**
+     * Returns how to decode images from Uri for the current size
+     * and scale type, or {@code null} to decode the full image.
+     */
+    @Nullable
+    private DecodeOptions obtainDecodeOptions() {
+        final PorterDuff.Mode bakeMode = getBakeMode();
+        final int bakeColor = bakeMode != null ? getBakeColor() : 0;
+
+        if (mDecodeMode == DECODE_MODE_FULL) {
+            return bakeMode != null ? new DecodeOptions(0, 0, mScaleType,
+                    DECODE_MODE_FULL, bakeMode, bakeColor) : null;
+        }
+
+        int width = getWidth() - getPaddingLeft() - getPaddingRight();
+        int height = getHeight() - getPaddingTop() - getPaddingBottom();
+        if (width <= 0 || height <= 0) {
+            // Not laid out yet, the view is unlikely to be larger than the screen
+            final DisplayMetrics dm = getResources().getDisplayMetrics();
+            width = Math.min(mMaxWidth, dm.widthPixels);
+            height = Math.min(mMaxHeight, dm.heightPixels);
+        }
+
+        return new DecodeOptions(width, height, mScaleType, mDecodeMode, bakeMode, bakeColor);
+    }
+
+    /**
+     * Returns the mode of the color filter to bake into images decoded from Uri,
+     * or {@code null} if there is nothing to bake, or it can't be baked.
+     * A color filter set by {@link #setColorFilter(int, PorterDuff.Mode)} wins
+     * over a tint which isn't stateful, as it does in drawing.
+     */
+    @Nullable
+    private PorterDuff.Mode getBakeMode() {
+        if (!mBakeTint || mDecodeMode == DECODE_MODE_TILED) {
+            return null;
+        }
+        if (mHasColorFilter && mColorFilter != null) {
+            // Other color filters can't be drawn over a bitmap
+            return mColorFilter == mPorterDuffColorFilter ? mPorterDuffMode : null;
+        }
+        if (mHasDrawableTint && mDrawableTintList != null && !mDrawableTintList.isStateful()) {
+            return mDrawableTintMode != null ? mDrawableTintMode : PorterDuff.Mode.SRC_IN;
         }
         return null;
     }
 
-    @SuppressWarnings("deprecation")
-    private static Drawable getDrawableFromId(Resources resources, @DrawableRes int id, Resources.Theme theme) {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-            return resources.getDrawable(id, theme);
-        } else if (Build.VERSION.SDK_INT >= 16) {
-            return resources.getDrawable(id);
+    /**
+     * Returns the color of the color filter to bake. Only valid if
+     * {@link #getBakeMode()} isn't {@code null}.
+     */
+    private int getBakeColor() {
+        if (mHasColorFilter && mColorFilter != null) {
+            return mPorterDuffColor;
+        }
+        return mDrawableTintList.getDefaultColor();
+    }
+
+    /**
+     * Returns whether the color filter or the tint is baked into the bitmap
+     * of the drawable, so it must not be applied again.
+     */
+    private boolean isFilterBaked() {
+        return mDrawable instanceof DecodedBitmapDrawable
+                && ((DecodedBitmapDrawable) mDrawable).getDecodedBitmap().bakedMode != null;
+    }
+
+    /**
+     * Decodes the Uri again if the color filter to bake has changed.
+     */
+    private void rebakeIfNeeded() {
+        if (mUri == null || mResource != 0 || (mDrawable == null && mLoadRequest == null)) {
+            return;
+        }
+
+        final PorterDuff.Mode bakeMode = getBakeMode();
+        final int bakeColor = bakeMode != null ? getBakeColor() : 0;
+        final PorterDuff.Mode bakedMode = mUriOptions != null ? mUriOptions.bakeMode : null;
+        final int bakedColor = mUriOptions != null ? mUriOptions.bakeColor : 0;
+        if (bakeMode == bakedMode && bakeColor == bakedColor) {
+            return;
+        }
+
+        final int oldWidth = getContentWidth();
+        final int oldHeight = getContentHeight();
+
+        cancelLoad();
+        updateDrawable(null);
+        resolveUri();
+
+        if (oldWidth != getContentWidth() || oldHeight != getContentHeight()) {
+            onContentSizeChanged();
+        }
+        invalidate();
+    }
+
+    /**
+     * Return whether tint and color filter are baked into images from Uri.
+     *
+     * @see #setBakeTint(boolean)
+     */
+    public boolean isBakeTint() {
+        return mBakeTint;
+    }
+
+    /**
+     * Set whether to bake the tint or the color filter into images decoded by
+     * {@link #setImageURI(Uri)}, instead of applying it on every draw.
+     * Only a tint which isn't stateful and a color filter set by
+     * {@link #setColorFilter(int, PorterDuff.Mode)} could be baked. The bitmap
+     * is baked while decoding, off the UI thread in async mode, and cached
+     * with the color filter as a part of the key. Changing the tint or the color
+     * filter decodes the image again. {@link #DECODE_MODE_TILED} isn't supported.
+     * <p>
+     * It only takes effect for subsequent images.
+     */
+    public void setBakeTint(boolean bakeTint) {
+        mBakeTint = bakeTint;
+    }
+
+    private void startLoad(@Nullable DecodeOptions options) {
+        if (mResource != 0) {
+            mLoadRequest = ImageLoader.load(mContext, mResource, mLoadCallback);
         } else {
-            // Prior to JELLY_BEAN, Resources.getDrawable() would not correctly
-            // retrieve the final configuration density when the resource ID
-            // is a reference another Drawable resource. As a workaround, try
-            // to resolve the drawable reference manually.
-            if (sTempValue == null) {
-                sTempValue = new TypedValue();
+            final boolean probe = shouldProbeSize();
+            final long probedSize = probe ? ImageLoader.getProbedSize(mUri) : 0;
+            mLoadRequest = ImageLoader.load(mContext, mUri, options, mProgressiveLoad,
+                    probe && probedSize == 0, mLoadCallback);
+            if (probedSize != 0) {
+                mProbedWidth = ImageSizing.unpackWidth(probedSize);
+                mProbedHeight = ImageSizing.unpackHeight(probedSize);
             }
-            resources.getValue(id, sTempValue, true);
-            final int resolvedId = sTempValue.resourceId;
-            return resources.getDrawable(resolvedId);
         }
+
+        if (mPlaceholder != null) {
+            updateDrawable(mPlaceholder);
+        }
+    }
+
+    private void cancelLoad() {
+        if (mLoadRequest != null) {
+            mLoadRequest.cancel();
+            mLoadRequest = null;
+        }
+        mProbedWidth = -1;
+        mProbedHeight = -1;
+    }
+
+    /**
+     * Returns whether to measure with the size read from the header of the
+     * image, so the loaded image doesn't need another layout.
+     */
+    private boolean shouldProbeSize() {
+        return mAspectRatio == ASPECT_RATIO_OF_DRAWABLE && mResource == 0 && mUri != null;
+    }
+
+    private boolean hasContent() {
+        return mDrawable != null || mBitmap != null || mProbedWidth >= 0;
     }
 
     /**
-     * A resource identified by the {@link Resources} that contains it, and a resource id.
+     * Returns the width to measure with, the probed one while loading.
      */
-    private class OpenResourceIdResult {
-        public Resources r;
-        public int id;
+    private int getContentWidth() {
+        return mProbedWidth >= 0 ? mProbedWidth : mDrawableWidth;
     }
 
     /**
-     * Resolves an android.resource URI to a {@link Resources} and a resource id.
+     * Returns the height to measure with, the probed one while loading.
      */
-    private OpenResourceIdResult getResourceId(Uri uri) throws FileNotFoundException {
-        final String authority = uri.getAuthority();
-        final Resources r;
-        if (TextUtils.isEmpty(authority)) {
-            throw new FileNotFoundException("No authority: " + uri);
-        } else {
-            try {
-                r = mContext.getPackageManager().getResourcesForApplication(authority);
-            } catch (PackageManager.NameNotFoundException ex) {
-                throw new FileNotFoundException("No package found for authority: " + uri);
+    private int getContentHeight() {
+        return mProbedHeight >= 0 ? mProbedHeight : mDrawableHeight;
+    }
+
+    private final ImageLoader.Callback mLoadCallback = new ImageLoader.Callback() {
+        @Override
+        public void onLoaded(ImageLoader.Request request, @Nullable Drawable drawable) {
+            if (request != mLoadRequest) {
+                // The view has been rebound since the request was made
+                ImageLoader.release(drawable);
+                return;
             }
+            mLoadRequest = null;
+
+            if (isMetricsActive()) {
+                reportLoad(request.getMetrics());
+            }
+
+            if (drawable == null) {
+                Log.w(LOG_TAG, "resolveUri failed on resource " + mResource + " or uri " + mUri);
+                // Don't try again.
+                mResource = 0;
+                mUri = null;
+            }
+
+            final int oldWidth = getContentWidth();
+            final int oldHeight = getContentHeight();
+
+            // The size of the image takes over the probed one
+            mProbedWidth = -1;
+            mProbedHeight = -1;
+            updateDrawable(drawable);
+
+            if (oldWidth != getContentWidth() || oldHeight != getContentHeight()) {
+                onContentSizeChanged();
+            }
+            invalidate();
         }
-        final List<String> path = uri.getPathSegments();
-        if (path == null) {
-            throw new FileNotFoundException("No path: " + uri);
-        }
-        final int len = path.size();
-        final int id;
-        if (len == 1) {
-            try {
-                id = Integer.parseInt(path.get(0));
-            } catch (NumberFormatException e) {
-                throw new FileNotFoundException("Single path segment is not a resource ID: " + uri);
+
+        @Override
+        public void onPreview(ImageLoader.Request request, Drawable drawable) {
+            if (request != mLoadRequest) {
+                ImageLoader.release(drawable);
+                return;
             }
-        } else if (len == 2) {
-            id = r.getIdentifier(path.get(1), path.get(0), authority);
-        } else {
-            throw new FileNotFoundException("More than two path segments: " + uri);
+
+            final int oldWidth = getContentWidth();
+            final int oldHeight = getContentHeight();
+
+            // It replaces the placeholder, the image replaces it later
+            updateDrawable(drawable);
+
+            if (oldWidth != getContentWidth() || oldHeight != getContentHeight()) {
+                onContentSizeChanged();
+            }
+            invalidate();
         }
-        if (id == 0) {
-            throw new FileNotFoundException("No resource found for: " + uri);
+
+        @Override
+        public void onSizeProbed(ImageLoader.Request request, int width, int height) {
+            if (request != mLoadRequest) {
+                return;
+            }
+
+            final int oldWidth = getContentWidth();
+            final int oldHeight = getContentHeight();
+
+            mProbedWidth = width;
+            mProbedHeight = height;
+
+            if (oldWidth != getContentWidth() || oldHeight != getContentHeight()) {
+                onContentSizeChanged();
+            }
         }
-        final OpenResourceIdResult res = new OpenResourceIdResult();
-        res.r = r;
-        res.id = id;
-        return res;
-    }
+    };
 
     @Override
     public int[] onCreateDrawableState(int extraSpace) {
@@ -801,34 +1460,117 @@ public class AdvImageView extends View {
 
     private void updateDrawable(Drawable d) {
         if (mDrawable != null) {
-            mDrawable.setCallback(null);
-            unscheduleDrawable(mDrawable);
-            if (ViewCompat.isAttachedToWindow(this)) {
-                mDrawable.setVisible(false, false);
+            detachDrawable(mDrawable);
+            if (mDrawable != d) {
+                // Let its bitmap be reused
+                ImageLoader.release(mDrawable);
             }
         }
 
+        mBitmap = null;
         mDrawable = d;
+        mRasterBitmap = null;
 
         if (d != null) {
-            d.setCallback(this);
-            DrawableCompat.setLayoutDirection(d, ViewCompat.getLayoutDirection(this));
-            if (d.isStateful()) {
-                d.setState(getDrawableState());
+            // Drawables of resources share the state with the same tint and color mods
+            final Drawable.ConstantState source = getTintShareableState(d);
+            TintedStateCache.Key tintKey = null;
+            Drawable.ConstantState tinted = null;
+            if (source != null) {
+                tintKey = new TintedStateCache.Key(mHasDrawableTint, mDrawableTintList,
+                        mHasDrawableTintMode, mDrawableTintMode,
+                        mColorMod && mHasColorFilter,
+                        mColorFilter != null ? mPorterDuffMode : null, mPorterDuffColor,
+                        mColorMod ? mAlpha * mViewAlphaScale >> 8 : -1);
+                tinted = TintedStateCache.get(source, tintKey);
+                if (tinted != null) {
+                    d = tinted.newDrawable(getResources());
+                    mDrawable = d;
+                }
             }
-            if (ViewCompat.isAttachedToWindow(this)) {
-                d.setVisible(getVisibility() == VISIBLE, true);
+
+            attachDrawable(d);
+            if (tinted == null) {
+                applyImageTint();
+                applyColorMod();
+
+                if (source != null) {
+                    tinted = mDrawable.getConstantState();
+                    if (tinted != null && tinted != source) {
+                        TintedStateCache.put(source, tintKey, tinted);
+                        // This one may be modified again, keep one which isn't mutated
+                        detachDrawable(mDrawable);
+                        mDrawable = tinted.newDrawable(getResources());
+                        attachDrawable(mDrawable);
+                    }
+                }
             }
-            d.setLevel(mLevel);
-            mDrawableWidth = d.getIntrinsicWidth();
-            mDrawableHeight = d.getIntrinsicHeight();
-            applyImageTint();
-            applyColorMod();
+            mDrawableWidth = mDrawable.getIntrinsicWidth();
+            mDrawableHeight = mDrawable.getIntrinsicHeight();
 
             configureBounds();
         } else {
             mDrawableWidth = mDrawableHeight = -1;
+            // The same content may come back with its bounds changed elsewhere
+            mBoundsState.reset();
+        }
+    }
+
+    private void attachDrawable(Drawable d) {
+        d.setCallback(this);
+        DrawableCompat.setLayoutDirection(d, ViewCompat.getLayoutDirection(this));
+        if (d.isStateful()) {
+            d.setState(getDrawableState());
+        }
+        if (ViewCompat.isAttachedToWindow(this)) {
+            d.setVisible(getVisibility() == VISIBLE, true);
+        }
+        d.setLevel(mLevel);
+    }
+
+    private void detachDrawable(Drawable d) {
+        d.setCallback(null);
+        unscheduleDrawable(d);
+        if (ViewCompat.isAttachedToWindow(this)) {
+            d.setVisible(false, false);
+        }
+    }
+
+    /**
+     * Returns the state of the drawable if it's loaded from the resource and
+     * modified by tint or color mods, so the modified state could be shared.
+     * Only a color filter set by {@link #setColorFilter(int, PorterDuff.Mode)}
+     * could be compared, other color filters aren't shared.
+     */
+    @Nullable
+    private Drawable.ConstantState getTintShareableState(Drawable d) {
+        if (mResource == 0 || d == mPlaceholder || d instanceof Animatable
+                || (!mHasDrawableTint && !mHasDrawableTintMode && !mColorMod)) {
+            return null;
+        }
+        if (mColorMod && mHasColorFilter && mColorFilter != null
+                && mColorFilter != mPorterDuffColorFilter) {
+            return null;
         }
+        return d.getConstantState();
+    }
+
+    /**
+     * Requests layout only if the measured size changes with the new content size,
+     * otherwise only configures the bounds.
+     */
+    private void onContentSizeChanged() {
+        if (!isLayoutRequested() && mMeasureCache.canRemeasure()) {
+            computeMeasuredSize(mMeasureCache.getWidthMeasureSpec(),
+                    mMeasureCache.getHeightMeasureSpec());
+            if (mMeasuredWidthResult == mMeasureCache.getMeasuredWidth()
+                    && mMeasuredHeightResult == mMeasureCache.getMeasuredHeight()) {
+                // Fixed size or aspect ratio, the layout stays the same
+                configureBounds();
+                return;
+            }
+        }
+        requestLayout();
     }
 
     private void resizeFromDrawable() {
@@ -841,7 +1583,7 @@ public class AdvImageView extends View {
             if (w != mDrawableWidth || h != mDrawableHeight) {
                 mDrawableWidth = w;
                 mDrawableHeight = h;
-                requestLayout();
+                onContentSizeChanged();
             }
         }
     }
@@ -855,201 +1597,60 @@ public class AdvImageView extends View {
         }
     }
 
-    private static final Matrix.ScaleToFit[] sS2FArray = {
-            Matrix.ScaleToFit.FILL,
-            Matrix.ScaleToFit.START,
-            Matrix.ScaleToFit.CENTER,
-            Matrix.ScaleToFit.END
-    };
-
-    private static Matrix.ScaleToFit scaleTypeToScaleToFit(@ScaleType int st)  {
-        // ScaleToFit enum to their corresponding Matrix.ScaleToFit values
-        return sS2FArray[st - 1];
-    }
-
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-        resolveUri();
-        int w;
-        int h;
-
-        // Desired aspect ratio of the view's contents (not including padding)
-        float desiredAspect = INVALID_ASPECT_RATIO;
-
-        // We are allowed to change the view's width
-        boolean resizeWidth = false;
-
-        // We are allowed to change the view's height
-        boolean resizeHeight = false;
-
-        final int widthSpecMode = MeasureSpec.getMode(widthMeasureSpec);
-        final int heightSpecMode = MeasureSpec.getMode(heightMeasureSpec);
-
-        if (mDrawable == null) {
-            // If no drawable, its intrinsic size is 0.
-            mDrawableWidth = -1;
-            mDrawableHeight = -1;
-            w = h = 0;
-
-            // We are supposed to adjust view bounds to match the aspect
-            // ratio. See if that is possible.
-            if (mAspectRatio > ASPECT_RATIO_OF_DRAWABLE) {
-                resizeWidth = widthSpecMode != MeasureSpec.EXACTLY;
-                resizeHeight = heightSpecMode != MeasureSpec.EXACTLY;
-                desiredAspect = mAspectRatio;
-            }
+        if (isMetricsActive()) {
+            ImageMetrics.beginSection("AdvImageView#onMeasure");
+            final long start = System.nanoTime();
+            measureImage(widthMeasureSpec, heightMeasureSpec);
+            ImageMetrics.endSection();
+            reportMetric(ImageMetrics.METRIC_MEASURE_TIME, System.nanoTime() - start);
         } else {
-            w = mDrawableWidth;
-            h = mDrawableHeight;
-            if (w <= 0) w = 1;
-            if (h <= 0) h = 1;
-
-            // We are supposed to adjust view bounds to match the aspect
-            // ratio. See if that is possible.
-            if (mAspectRatio >= ASPECT_RATIO_OF_DRAWABLE) {
-                resizeWidth = widthSpecMode != MeasureSpec.EXACTLY;
-                resizeHeight = heightSpecMode != MeasureSpec.EXACTLY;
-                desiredAspect = mAspectRatio > ASPECT_RATIO_OF_DRAWABLE ? mAspectRatio : (float) w / (float) h;
-            }
+            measureImage(widthMeasureSpec, heightMeasureSpec);
         }
+    }
 
-        final int pLeft = getPaddingLeft();
-        final int pRight = getPaddingRight();
-        final int pTop = getPaddingTop();
-        final int pBottom = getPaddingBottom();
-
-        int widthSize;
-        int heightSize;
-
-        if (resizeWidth || resizeHeight) {
-            /* If we get here, it means we want to resize to match the
-                drawables aspect ratio, and we have the freedom to change at
-                least one dimension.
-            */
-
-            // Get the max possible width given our constraints
-            widthSize = resolveAdjustedSize(w + pLeft + pRight, mMinWidth, mMaxWidth, widthMeasureSpec);
-
-            // Get the max possible height given our constraints
-            heightSize = resolveAdjustedSize(h + pTop + pBottom, mMinHeight, mMaxHeight, heightMeasureSpec);
-
-            if (desiredAspect != INVALID_ASPECT_RATIO) {
-                // See what our actual aspect ratio is
-                final float actualAspect = (float)(widthSize - pLeft - pRight) /
-                        (heightSize - pTop - pBottom);
-
-                if (Math.abs(actualAspect - desiredAspect) > 0.0000001) {
-
-                    boolean done = false;
-
-                    // Try adjusting width to be proportional to height
-                    if (resizeWidth) {
-                        final int newWidth = (int)(desiredAspect * (heightSize - pTop - pBottom)) +
-                                pLeft + pRight;
-
-                        if (isSizeAcceptable(newWidth, mMinWidth, mMaxWidth, widthMeasureSpec)) {
-                            widthSize = newWidth;
-                            done = true;
-                        }
-                    }
-
-                    // Try adjusting height to be proportional to width
-                    if (!done && resizeHeight) {
-                        final int newHeight = (int)((widthSize - pLeft - pRight) / desiredAspect) +
-                                pTop + pBottom;
-
-                        if (isSizeAcceptable(newHeight, mMinHeight, mMaxHeight, heightMeasureSpec)) {
-                            heightSize = newHeight;
-                        }
-                    }
-                }
-            }
-        } else {
-            /* We are either don't want to preserve the drawables aspect ratio,
-               or we are not allowed to change view dimensions. Just measure in
-               the normal way.
-            */
-            w += pLeft + pRight;
-            h += pTop + pBottom;
+    private void measureImage(int widthMeasureSpec, int heightMeasureSpec) {
+        resolveUri();
 
-            w = Math.max(w, getSuggestedMinimumWidth());
-            h = Math.max(h, getSuggestedMinimumHeight());
+        // Nested weighted layouts measure many times with the same specs
+        if (mMeasureCache.update(widthMeasureSpec, heightMeasureSpec,
+                hasContent(), getContentWidth(), getContentHeight(), mAspectRatio,
+                mMinWidth, mMaxWidth, mMinHeight, mMaxHeight,
+                getPaddingLeft(), getPaddingTop(), getPaddingRight(), getPaddingBottom(),
+                getSuggestedMinimumWidth(), getSuggestedMinimumHeight())) {
+            setMeasuredDimension(mMeasureCache.getMeasuredWidth(),
+                    mMeasureCache.getMeasuredHeight());
+            return;
+        }
 
-            widthSize = resolveSizeAndState(w, widthMeasureSpec, 0);
-            heightSize = resolveSizeAndState(h, heightMeasureSpec, 0);
+        if (mDrawable == null && mBitmap == null) {
+            mDrawableWidth = -1;
+            mDrawableHeight = -1;
         }
 
-        setMeasuredDimension(widthSize, heightSize);
+        computeMeasuredSize(widthMeasureSpec, heightMeasureSpec);
+        mMeasureCache.setResult(mMeasuredWidthResult, mMeasuredHeightResult);
+        setMeasuredDimension(mMeasuredWidthResult, mMeasuredHeightResult);
     }
 
-    private int resolveAdjustedSize(int desiredSize, int minSize,
-            int maxSize, int measureSpec) {
-        int result = desiredSize;
-        final int specMode = MeasureSpec.getMode(measureSpec);
-        final int specSize =  MeasureSpec.getSize(measureSpec);
-        switch (specMode) {
-            case MeasureSpec.UNSPECIFIED:
-                /* Parent says we can be as big as we want. Just don't be larger
-                   than max size imposed on ourselves.
-                */
-                result = Math.max(Math.min(desiredSize, maxSize), minSize);
-                break;
-            case MeasureSpec.AT_MOST:
-                // Parent says we can be as big as we want, up to specSize.
-                // Don't be larger than specSize, and don't be larger than
-                // the max size imposed on ourselves.
-                result = Math.max(Math.min(Math.min(desiredSize, specSize), maxSize), minSize);
-                break;
-            case MeasureSpec.EXACTLY:
-                // No choice. Do what we are told.
-                result = specSize;
-                break;
-        }
-        return result;
-    }
-
-    private static boolean isSizeAcceptable(int size, int minSize, int maxSize, int measureSpec) {
-        final int specMode = MeasureSpec.getMode(measureSpec);
-        final int specSize =  MeasureSpec.getSize(measureSpec);
-        switch (specMode) {
-            case MeasureSpec.UNSPECIFIED:
-                // Parent says we can be as big as we want. Just don't be smaller
-                // than min size, and don't be larger than max size.
-                return size >= minSize && size <= maxSize;
-            case MeasureSpec.AT_MOST:
-                // Parent says we can be as big as we want, up to specSize.
-                // Don't be larger than specSize, and don't be smaller
-                // than min size, and don't be larger than max size.
-                return size <= specSize && size >= minSize && size <= maxSize;
-            case MeasureSpec.EXACTLY:
-                // No choice.
-                return size == specSize;
-            default:
-                // WTF? Return true to make you happy. (´・ω・`)
-                return true;
-        }
+    /**
+     * Computes the measured size, with state bits, into
+     * {@link #mMeasuredWidthResult} and {@link #mMeasuredHeightResult}.
+     * It has no other side effect.
+     */
+    private void computeMeasuredSize(int widthMeasureSpec, int heightMeasureSpec) {
+        final long measured = ImageSizing.measure(widthMeasureSpec, heightMeasureSpec,
+                hasContent(), getContentWidth(), getContentHeight(), mAspectRatio,
+                mMinWidth, mMaxWidth, mMinHeight, mMaxHeight,
+                getPaddingLeft(), getPaddingTop(), getPaddingRight(), getPaddingBottom(),
+                getSuggestedMinimumWidth(), getSuggestedMinimumHeight());
+        mMeasuredWidthResult = ImageSizing.unpackWidth(measured);
+        mMeasuredHeightResult = ImageSizing.unpackHeight(measured);
     }
 
     public static int resolveSizeAndState(int size, int measureSpec, int childMeasuredState) {
-        final int specMode = MeasureSpec.getMode(measureSpec);
-        final int specSize = MeasureSpec.getSize(measureSpec);
-        final int result;
-        switch (specMode) {
-            case MeasureSpec.AT_MOST:
-                if (specSize < size) {
-                    result = specSize | MEASURED_STATE_TOO_SMALL;
-                } else {
-                    result = size;
-                }
-                break;
-            case MeasureSpec.EXACTLY:
-                result = specSize;
-                break;
-            case MeasureSpec.UNSPECIFIED:
-            default:
-                result = size;
-        }
-        return result | (childMeasuredState & MEASURED_STATE_MASK);
+        return ImageSizing.resolveSizeAndState(size, measureSpec, childMeasuredState);
     }
 
     // setFrame is not public API, so use layout instead of setFrame
@@ -1057,11 +1658,28 @@ public class AdvImageView extends View {
     public void layout(int l, int t, int r, int b) {
         super.layout(l, t, r, b);
         mHaveFrame = true;
+        mMeasureCache.onLayout();
         configureBounds();
     }
 
     private void configureBounds() {
-        if (mDrawable == null || !mHaveFrame) {
+        if (isMetricsActive()) {
+            ImageMetrics.beginSection("AdvImageView#configureBounds");
+            final long start = System.nanoTime();
+            configureImageBounds();
+            ImageMetrics.endSection();
+            reportMetric(ImageMetrics.METRIC_CONFIGURE_BOUNDS_TIME, System.nanoTime() - start);
+        } else {
+            configureImageBounds();
+        }
+    }
+
+    private void configureImageBounds() {
+        if (mDrawable == null && mBitmap == null) {
+            mBoundsState.reset();
+            return;
+        }
+        if (!mHaveFrame) {
             return;
         }
 
@@ -1071,90 +1689,79 @@ public class AdvImageView extends View {
         final int vWidth = getWidth() - getPaddingLeft() - getPaddingRight();
         final int vHeight = getHeight() - getPaddingTop() - getPaddingBottom();
 
-        final boolean fits = (dWidth < 0 || vWidth == dWidth) &&
-                (dHeight < 0 || vHeight == dHeight);
-
-        if (dWidth <= 0 || dHeight <= 0 || mScaleType == SCALE_TYPE_FIT_XY) {
-            /* If the drawable has no intrinsic size, or we're told to
-                scale to fit, then we just fill our entire view.
-            */
-            mDrawable.setBounds(0, 0, vWidth, vHeight);
-            mDrawMatrix = null;
-        } else {
-            // We need to do the scaling ourselves, so have the drawable
-            // use its native size.
-            mDrawable.setBounds(0, 0, dWidth, dHeight);
+        // Layout passes usually change nothing
+        if (!mBoundsState.update(mBitmap != null ? mBitmap : mDrawable,
+                dWidth, dHeight, vWidth, vHeight, mScaleType)) {
+            return;
+        }
 
-            if (mScaleType == SCALE_TYPE_MATRIX) {
+        final float[] transform = mTransform;
+        switch (ImageSizing.computeTransform(dWidth, dHeight, vWidth, vHeight, mScaleType, transform)) {
+            case ImageSizing.TRANSFORM_FILL:
+                /* If the drawable has no intrinsic size, or we're told to
+                    scale to fit, then we just fill our entire view.
+                */
+                setContentBounds(0, 0, vWidth, vHeight);
+                mDrawMatrix = null;
+                break;
+            case ImageSizing.TRANSFORM_MATRIX:
+                setContentBounds(0, 0, dWidth, dHeight);
                 // Use the specified matrix as-is.
                 if (mMatrix.isIdentity()) {
                     mDrawMatrix = null;
                 } else {
                     mDrawMatrix = mMatrix;
                 }
-            } else if (fits) {
-                // The bitmap fits exactly, no transform needed.
+                break;
+            case ImageSizing.TRANSFORM_NONE:
+                setContentBounds(0, 0, dWidth, dHeight);
                 mDrawMatrix = null;
-            } else if (mScaleType == SCALE_TYPE_CENTER) {
-                // Center bitmap in view, no scaling.
-                mDrawMatrix = mMatrix;
-                mDrawMatrix.setTranslate(Math.round((vWidth - dWidth) * 0.5f),
-                        Math.round((vHeight - dHeight) * 0.5f));
-            } else if (mScaleType == SCALE_TYPE_CENTER_CROP) {
-                mDrawMatrix = mMatrix;
-
-                final float scale;
-                float dx = 0, dy = 0;
-
-                if (dWidth * vHeight > vWidth * dHeight) {
-                    scale = (float) vHeight / (float) dHeight;
-                    dx = (vWidth - dWidth * scale) * 0.5f;
-                } else {
-                    scale = (float) vWidth / (float) dWidth;
-                    dy = (vHeight - dHeight * scale) * 0.5f;
-                }
-
-                mDrawMatrix.setScale(scale, scale);
-                mDrawMatrix.postTranslate(Math.round(dx), Math.round(dy));
-            } else if (mScaleType == SCALE_TYPE_CENTER_INSIDE) {
+                break;
+            case ImageSizing.TRANSFORM_SCALE_TRANSLATE:
+            default:
+                setContentBounds(0, 0, dWidth, dHeight);
                 mDrawMatrix = mMatrix;
-                final float scale;
-                final float dx;
-                final float dy;
-
-                if (dWidth <= vWidth && dHeight <= vHeight) {
-                    scale = 1.0f;
-                } else {
-                    scale = Math.min((float) vWidth / (float) dWidth,
-                            (float) vHeight / (float) dHeight);
-                }
-
-                dx = Math.round((vWidth - dWidth * scale) * 0.5f);
-                dy = Math.round((vHeight - dHeight * scale) * 0.5f);
-
-                mDrawMatrix.setScale(scale, scale);
-                mDrawMatrix.postTranslate(dx, dy);
-            } else {
-                // Generate the required transform.
-                mTempSrc.set(0, 0, dWidth, dHeight);
-                mTempDst.set(0, 0, vWidth, vHeight);
+                mDrawMatrix.setScale(transform[0], transform[1]);
+                mDrawMatrix.postTranslate(transform[2], transform[3]);
+                break;
+        }
+    }
 
-                mDrawMatrix = mMatrix;
-                mDrawMatrix.setRectToRect(mTempSrc, mTempDst, scaleTypeToScaleToFit(mScaleType));
-            }
+    private void setContentBounds(int left, int top, int right, int bottom) {
+        if (mBitmap != null) {
+            mBitmapBounds.set(left, top, right, bottom);
+        } else {
+            mDrawable.setBounds(left, top, right, bottom);
         }
     }
 
+    private Rect getContentBounds() {
+        return mBitmap != null ? mBitmapBounds : mDrawable.getBounds();
+    }
+
     @Override
     protected void drawableStateChanged() {
         super.drawableStateChanged();
+        if (mBitmap != null && mDrawableTintList != null && mDrawableTintList.isStateful()) {
+            updateBitmapPaint();
+            invalidate();
+        }
         final Drawable drawable = mDrawable;
         if (drawable != null && drawable.isStateful()
                 && drawable.setState(getDrawableState())) {
+            // The raster of a stateful vector is keyed by the state
+            mRasterBitmap = null;
             invalidateDrawable(drawable);
         }
     }
 
+    @Override
+    protected void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        // The raster is keyed by the ui mode and the density
+        mRasterBitmap = null;
+    }
+
     @Override
     public void drawableHotspotChanged(float x, float y) {
         super.drawableHotspotChanged(x, y);
@@ -1165,15 +1772,20 @@ public class AdvImageView extends View {
     }
 
     public void animateTransform(Matrix matrix) {
-        if (mDrawable == null) {
+        if (mDrawable == null && mBitmap == null) {
             return;
         }
+        // Configure again on next layout
+        mBoundsState.reset();
         if (matrix == null) {
-            mDrawable.setBounds(0, 0, getWidth(), getHeight());
+            setContentBounds(0, 0, getWidth(), getHeight());
         } else {
-            mDrawable.setBounds(0, 0, mDrawableWidth, mDrawableHeight);
+            setContentBounds(0, 0, mDrawableWidth, mDrawableHeight);
             if (mDrawMatrix == null) {
-                mDrawMatrix = new Matrix();
+                if (mAnimateMatrix == null) {
+                    mAnimateMatrix = new Matrix();
+                }
+                mDrawMatrix = mAnimateMatrix;
             }
             mDrawMatrix.set(matrix);
         }
@@ -1182,9 +1794,21 @@ public class AdvImageView extends View {
 
     @Override
     protected void onDraw(Canvas canvas) {
+        if (isMetricsActive()) {
+            ImageMetrics.beginSection("AdvImageView#onDraw");
+            final long start = System.nanoTime();
+            drawImage(canvas);
+            ImageMetrics.endSection();
+            reportMetric(ImageMetrics.METRIC_DRAW_TIME, System.nanoTime() - start);
+        } else {
+            drawImage(canvas);
+        }
+    }
+
+    private void drawImage(Canvas canvas) {
         super.onDraw(canvas);
 
-        if (mDrawable == null) {
+        if (mDrawable == null && mBitmap == null) {
             return; // couldn't resolve the URI
         }
 
@@ -1195,8 +1819,16 @@ public class AdvImageView extends View {
         final int pLeft = getPaddingLeft();
         final int pTop = getPaddingTop();
 
+        if (mDrawable instanceof TiledDrawable) {
+            ((TiledDrawable) mDrawable).setDrawScale(getDrawScale());
+        }
+
+        if (sCountOverdraw) {
+            countDraw();
+        }
+
         if (mDrawMatrix == null && pTop == 0 && pLeft == 0) {
-            mDrawable.draw(canvas);
+            drawContent(canvas);
         } else {
             final int saveCount = canvas.getSaveCount();
             canvas.save();
@@ -1214,11 +1846,102 @@ public class AdvImageView extends View {
             if (mDrawMatrix != null) {
                 canvas.concat(mDrawMatrix);
             }
-            mDrawable.draw(canvas);
+            drawContent(canvas);
             canvas.restoreToCount(saveCount);
         }
     }
 
+    /**
+     * Returns the scale of the draw matrix.
+     */
+    private float getDrawScale() {
+        if (mDrawMatrix == null) {
+            return 1.0f;
+        }
+        final float[] values = mTempValues;
+        mDrawMatrix.getValues(values);
+        final float scaleX = values[Matrix.MSCALE_X];
+        final float skewY = values[Matrix.MSKEW_Y];
+        return (float) Math.sqrt(scaleX * scaleX + skewY * skewY);
+    }
+
+    private void drawContent(Canvas canvas) {
+        if (mBitmap != null) {
+            canvas.drawBitmap(mBitmap, null, mBitmapBounds, mBitmapPaint);
+        } else if (!mRasterizeVector || !drawRasterized(canvas)) {
+            mDrawable.draw(canvas);
+        }
+    }
+
+    /**
+     * Draws the vector drawable from a bitmap rasterized at the size
+     * it's drawn in pixels.
+     *
+     * @return {@code false} if the drawable can't be rasterized
+     */
+    private boolean drawRasterized(Canvas canvas) {
+        // The color filter can't be a part of the key
+        if (mResource == 0 || mColorFilter != null
+                || !VectorRasterCache.isStaticVector(mDrawable)) {
+            return false;
+        }
+
+        final Rect bounds = mDrawable.getBounds();
+        if (bounds.isEmpty()) {
+            return false;
+        }
+
+        float scaleX = 1.0f;
+        float scaleY = 1.0f;
+        if (mDrawMatrix != null) {
+            final float[] values = mTempValues;
+            mDrawMatrix.getValues(values);
+            scaleX = (float) Math.hypot(values[Matrix.MSCALE_X], values[Matrix.MSKEW_Y]);
+            scaleY = (float) Math.hypot(values[Matrix.MSKEW_X], values[Matrix.MSCALE_Y]);
+        }
+        final int width = (int) Math.ceil(bounds.width() * scaleX);
+        final int height = (int) Math.ceil(bounds.height() * scaleY);
+        if (width <= 0 || height <= 0 || (long) width * height > VectorRasterCache.MAX_PIXELS) {
+            return false;
+        }
+
+        final int tint = mHasDrawableTint && mDrawableTintList != null
+                ? mDrawableTintList.getColorForState(getDrawableState(),
+                mDrawableTintList.getDefaultColor()) : 0;
+        // Auto mirrored vectors are drawn flipped in RTL
+        final int layoutDirection = DrawableCompat.getLayoutDirection(mDrawable);
+
+        if (mRasterBitmap == null || mRasterWidth != width || mRasterHeight != height
+                || mRasterTint != tint || mRasterLayoutDirection != layoutDirection) {
+            String key = mResource + "#" + width + 'x' + height + '#' + tint
+                    + '#' + mDrawableTintMode + '#' + (mAlpha * mViewAlphaScale >> 8)
+                    + '#' + layoutDirection
+                    + '#' + VectorRasterCache.getThemeId(mContext.getTheme());
+            // Night mode or density may change in the same theme
+            final Resources res = getResources();
+            key = key + '#' + res.getConfiguration().uiMode
+                    + '#' + res.getDisplayMetrics().densityDpi;
+            if (mDrawable.isStateful()) {
+                // Colors of the vector may depend on the state
+                key = key + '#' + Arrays.toString(mDrawable.getState());
+            }
+            mRasterBitmap = VectorRasterCache.obtain(key, mDrawable, width, height);
+            mRasterWidth = width;
+            mRasterHeight = height;
+            mRasterTint = tint;
+            mRasterLayoutDirection = layoutDirection;
+            if (mRasterBitmap == null) {
+                return false;
+            }
+        }
+
+        if (mRasterPaint == null) {
+            mRasterPaint = new Paint(Paint.FILTER_BITMAP_FLAG | Paint.DITHER_FLAG);
+        }
+        canvas.drawBitmap(mRasterBitmap, null, bounds, mRasterPaint);
+        return true;
+    }
+
     /**
      * <p>Return the offset of the widget's text baseline from the widget's top
      * boundary. </p>
@@ -1282,7 +2005,14 @@ public class AdvImageView extends View {
      * {@link PorterDuff.Mode#SRC_ATOP}
      */
     public final void setColorFilter(int color, PorterDuff.Mode mode) {
-        setColorFilter(new PorterDuffColorFilter(color, mode));
+        // Reuse the filter for the same color and mode, it's immutable
+        if (mPorterDuffColorFilter == null || mPorterDuffColor != color
+                || mPorterDuffMode != mode) {
+            mPorterDuffColorFilter = new PorterDuffColorFilter(color, mode);
+            mPorterDuffColor = color;
+            mPorterDuffMode = mode;
+        }
+        setColorFilter(mPorterDuffColorFilter);
     }
 
     /**
@@ -1323,6 +2053,7 @@ public class AdvImageView extends View {
             mHasColorFilter = true;
             mColorMod = true;
             applyColorMod();
+            rebakeIfNeeded();
             invalidate();
         }
     }
@@ -1372,9 +2103,15 @@ public class AdvImageView extends View {
         // Only mutate and apply when modifications have occurred. This should
         // not reset the mColorMod flag, since these filters need to be
         // re-applied if the Drawable is changed.
+        mRasterBitmap = null;
+
+        if (mBitmap != null) {
+            updateBitmapPaint();
+        }
+
         if (mDrawable != null && mColorMod) {
             mDrawable = mDrawable.mutate();
-            if (mHasColorFilter) {
+            if (mHasColorFilter && !isFilterBaked()) {
                 mDrawable.setColorFilter(mColorFilter);
             }
             mDrawable.setAlpha(mAlpha * mViewAlphaScale >> 8);
@@ -1383,35 +2120,111 @@ public class AdvImageView extends View {
 
     @Override
     public boolean isOpaque() {
-        return super.isOpaque() || mDrawable != null
-                && mDrawable.getOpacity() == PixelFormat.OPAQUE
-                && mAlpha * mViewAlphaScale >> 8 == 255
-                && isFilledByImage();
+        return super.isOpaque() || isImageOpaque() && isFilledByImage();
+    }
+
+    /**
+     * Returns whether every pixel of the image is drawn opaque. Decoded bitmaps
+     * without translucent pixels are marked opaque by {@link DrawableDecoder}.
+     */
+    private boolean isImageOpaque() {
+        if (mAlpha * mViewAlphaScale >> 8 != 255) {
+            return false;
+        }
+        if (mDrawable != null) {
+            // Drawables don't take tint or color filter into account for opacity
+            return mDrawable.getOpacity() == PixelFormat.OPAQUE
+                    && (isFilterBaked() || (!mHasColorFilter || mColorFilter == null)
+                    && (!mHasDrawableTint || mDrawableTintList == null));
+        }
+        return mBitmap != null && !mBitmap.hasAlpha() && mBitmapPaint.getColorFilter() == null;
     }
 
     private boolean isFilledByImage() {
-        if (mDrawable == null) {
+        if (mDrawable == null && mBitmap == null) {
             return false;
         }
 
-        final Rect bounds = mDrawable.getBounds();
+        // The image is drawn with the padding offset
+        final int left = -getPaddingLeft();
+        final int top = -getPaddingTop();
+        final int right = getWidth() - getPaddingLeft();
+        final int bottom = getHeight() - getPaddingTop();
+        final Rect bounds = getContentBounds();
         final Matrix matrix = mDrawMatrix;
         if (matrix == null) {
-            return bounds.left <= 0 && bounds.top <= 0 && bounds.right >= getWidth()
-                    && bounds.bottom >= getHeight();
+            return bounds.left <= left && bounds.top <= top && bounds.right >= right
+                    && bounds.bottom >= bottom;
         } else if (matrix.rectStaysRect()) {
             final RectF boundsSrc = mTempSrc;
             final RectF boundsDst = mTempDst;
             boundsSrc.set(bounds);
             matrix.mapRect(boundsDst, boundsSrc);
-            return boundsDst.left <= 0 && boundsDst.top <= 0 && boundsDst.right >= getWidth()
-                    && boundsDst.bottom >= getHeight();
+            return boundsDst.left <= left && boundsDst.top <= top && boundsDst.right >= right
+                    && boundsDst.bottom >= bottom;
         } else {
             // If the matrix doesn't map to a rectangle, assume the worst.
             return false;
         }
     }
 
+    private void countDraw() {
+        sDrawCount++;
+        if (isImageOpaque() && isFilledByImage()) {
+            sOpaqueDrawCount++;
+            if (getBackground() != null) {
+                // The background is drawn and covered
+                sOverdrawCount++;
+            }
+        }
+    }
+
+    /**
+     * Set whether to count draws of all AdvImageViews, for verifying how much
+     * overdraw is saved. It takes some time in every draw, use it for debugging only.
+     * The counts are reset.
+     *
+     * @see #getDrawCount()
+     * @see #getOpaqueDrawCount()
+     * @see #getOverdrawCount()
+     */
+    public static void setCountOverdraw(boolean countOverdraw) {
+        sCountOverdraw = countOverdraw;
+        sDrawCount = 0;
+        sOpaqueDrawCount = 0;
+        sOverdrawCount = 0;
+    }
+
+    /**
+     * Returns the number of images drawn since counting is started.
+     *
+     * @see #setCountOverdraw(boolean)
+     */
+    public static int getDrawCount() {
+        return sDrawCount;
+    }
+
+    /**
+     * Returns the number of images drawn opaque and covering the whole view,
+     * the views behind it could skip drawing.
+     *
+     * @see #setCountOverdraw(boolean)
+     */
+    public static int getOpaqueDrawCount() {
+        return sOpaqueDrawCount;
+    }
+
+    /**
+     * Returns the number of images drawn over a background of the view
+     * which is fully covered by the image. Removing the background saves
+     * the overdraw.
+     *
+     * @see #setCountOverdraw(boolean)
+     */
+    public static int getOverdrawCount() {
+        return sOverdrawCount;
+    }
+
     @Override
     public void setVisibility(int visibility) {
         super.setVisibility(visibility);
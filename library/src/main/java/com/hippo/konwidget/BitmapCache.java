@@ -0,0 +1,141 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.konwidget;
+
+/*
+ * Created by Hippo on 10/18/2016.
+ */
+
+import android.net.Uri;
+import android.support.annotation.Nullable;
+import android.support.v4.util.LruCache;
+
+/**
+ * A process-wide in-memory LRU cache of bitmaps decoded by {@link AdvImageView}.
+ * It's keyed by the Uri and how it's decoded, bounded by bytes.
+ */
+public final class BitmapCache {
+
+    private static BitmapCache sInstance;
+
+    /**
+     * Returns the shared cache. It takes 1/8 of the max memory by default.
+     */
+    public static synchronized BitmapCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new BitmapCache((int) Math.min(Integer.MAX_VALUE,
+                    Runtime.getRuntime().maxMemory() / 8));
+        }
+        return sInstance;
+    }
+
+    private final LruCache<String, DecodedBitmap> mCache;
+
+    private BitmapCache(int maxSize) {
+        mCache = new LruCache<String, DecodedBitmap>(maxSize) {
+            @Override
+            protected int sizeOf(String key, DecodedBitmap value) {
+                return value.bitmap.getRowBytes() * value.bitmap.getHeight();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key,
+                    DecodedBitmap oldValue, DecodedBitmap newValue) {
+                if (oldValue != newValue) {
+                    oldValue.setCached(false);
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the key of the image from the Uri decoded with the options.
+     */
+    static String getKey(Uri uri, @Nullable DecodeOptions options) {
+        String key = uri.toString();
+        if (options == null) {
+            return key;
+        }
+        if (options.decodeMode != AdvImageView.DECODE_MODE_FULL) {
+            key = key + '#' + options.targetWidth + 'x' + options.targetHeight
+                    + '#' + options.scaleType + '#' + options.decodeMode;
+        }
+        if (options.bakeMode != null) {
+            key = key + "#bake#" + Integer.toHexString(options.bakeColor) + '#' + options.bakeMode;
+        }
+        return key;
+    }
+
+    @Nullable
+    DecodedBitmap get(String key) {
+        return mCache.get(key);
+    }
+
+    void put(String key, DecodedBitmap decodedBitmap) {
+        decodedBitmap.setCached(true);
+        mCache.put(key, decodedBitmap);
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        mCache.evictAll();
+    }
+
+    /**
+     * Removes the eldest entries until the total size is not larger than the size.
+     */
+    public void trimToSize(int maxSize) {
+        mCache.trimToSize(maxSize);
+    }
+
+    /**
+     * Returns the sum of the bytes of the cached bitmaps.
+     */
+    public int size() {
+        return mCache.size();
+    }
+
+    /**
+     * Returns the max sum of the bytes of the cached bitmaps.
+     */
+    public int maxSize() {
+        return mCache.maxSize();
+    }
+
+    /**
+     * Returns the number of times a lookup found the bitmap.
+     */
+    public int hitCount() {
+        return mCache.hitCount();
+    }
+
+    /**
+     * Returns the number of times a lookup didn't find the bitmap.
+     */
+    public int missCount() {
+        return mCache.missCount();
+    }
+
+    /**
+     * Returns the number of bitmaps which have been evicted.
+     */
+    public int evictionCount() {
+        return mCache.evictionCount();
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.konwidget;
+
+/*
+ * Created by Hippo on 10/18/2016.
+ */
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A pool of bitmaps which are no longer shown, to be reused by
+ * {@link android.graphics.BitmapFactory.Options#inBitmap}.
+ * Bitmaps are bucketed by allocation size and evicted in LRU order.
+ * <p>
+ * The bitmaps of images which {@link AdvImageView} decodes from Uri are
+ * put here once no view shows them and {@link BitmapCache} drops them,
+ * so don't keep {@link AdvImageView#getDrawable()} of them after that.
+ * <p>
+ * Only works on KitKat and above, where a bitmap could be reused for
+ * any image not larger than it.
+ */
+public final class BitmapPool {
+
+    // Don't reuse a bitmap more than twice larger than needed
+    private static final int MAX_OVERSIZE_MULTIPLE = 2;
+
+    private static BitmapPool sInstance;
+
+    /**
+     * Returns the shared pool. It takes 1/16 of the max memory by default.
+     */
+    public static synchronized BitmapPool getInstance() {
+        if (sInstance == null) {
+            sInstance = new BitmapPool((int) Math.min(Integer.MAX_VALUE,
+                    Runtime.getRuntime().maxMemory() / 16));
+        }
+        return sInstance;
+    }
+
+    private final int mMaxSize;
+    private int mSize;
+
+    // Allocation size to bitmaps
+    private final TreeMap<Integer, ArrayList<Bitmap>> mBuckets =
+            new TreeMap<Integer, ArrayList<Bitmap>>();
+    // The eldest is the first
+    private final LinkedList<Bitmap> mLru = new LinkedList<Bitmap>();
+
+    private int mHitCount;
+    private int mMissCount;
+    private int mPutCount;
+    private int mEvictionCount;
+
+    private BitmapPool(int maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Returns whether bitmaps could be reused on this device.
+     */
+    public static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static int getAllocationSize(Bitmap bitmap) {
+        return bitmap.getAllocationByteCount();
+    }
+
+    /**
+     * Puts a bitmap which no one uses into the pool.
+     * It's dropped if it can't be reused.
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (!isSupported() || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return;
+        }
+
+        final int size = getAllocationSize(bitmap);
+        if (size > mMaxSize) {
+            return;
+        }
+
+        ArrayList<Bitmap> bucket = mBuckets.get(size);
+        if (bucket == null) {
+            bucket = new ArrayList<Bitmap>();
+            mBuckets.put(size, bucket);
+        }
+        bucket.add(bitmap);
+        mLru.addLast(bitmap);
+        mSize += size;
+        mPutCount++;
+
+        trimToSize(mMaxSize);
+    }
+
+    /**
+     * Takes a bitmap which could hold the bytes out of the pool.
+     *
+     * @return {@code null} if there is no such bitmap
+     */
+    @Nullable
+    public synchronized Bitmap get(int byteCount) {
+        if (!isSupported() || byteCount <= 0) {
+            return null;
+        }
+
+        final Map.Entry<Integer, ArrayList<Bitmap>> entry = mBuckets.ceilingEntry(byteCount);
+        if (entry == null || entry.getKey() / MAX_OVERSIZE_MULTIPLE > byteCount) {
+            mMissCount++;
+            return null;
+        }
+
+        final ArrayList<Bitmap> bucket = entry.getValue();
+        final Bitmap bitmap = bucket.remove(bucket.size() - 1);
+        if (bucket.isEmpty()) {
+            mBuckets.remove(entry.getKey());
+        }
+        mLru.remove(bitmap);
+        mSize -= entry.getKey();
+        mHitCount++;
+        return bitmap;
+    }
+
+    /**
+     * Drops the eldest bitmaps until the total size is not larger than the size.
+     */
+    public synchronized void trimToSize(int maxSize) {
+        while (mSize > maxSize && !mLru.isEmpty()) {
+            final Bitmap bitmap = mLru.removeFirst();
+            final int size = getAllocationSize(bitmap);
+            final ArrayList<Bitmap> bucket = mBuckets.get(size);
+            bucket.remove(bitmap);
+            if (bucket.isEmpty()) {
+                mBuckets.remove(size);
+            }
+            mSize -= size;
+            mEvictionCount++;
+        }
+    }
+
+    /**
+     * Drops all bitmaps.
+     */
+    public void clear() {
+        trimToSize(0);
+    }
+
+    /**
+     * Returns the sum of the bytes of the pooled bitmaps.
+     */
+    public synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns the max sum of the bytes of the pooled bitmaps.
+     */
+    public int maxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * Returns the number of times {@link #get(int)} returned a bitmap.
+     */
+    public synchronized int hitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * Returns the number of times {@link #get(int)} returned {@code null}.
+     */
+    public synchronized int missCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Returns the number of bitmaps put into the pool.
+     */
+    public synchronized int putCount() {
+        return mPutCount;
+    }
+
+    /**
+     * Returns the number of bitmaps dropped to keep the size.
+     */
+    public synchronized int evictionCount() {
+        return mEvictionCount;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.konwidget;
+
+/*
+ * Created by Hippo on 10/18/2016.
+ */
+
+/**
+ * The inputs {@link AdvImageView} configured the bounds and the draw matrix
+ * of its content with last time, to skip configuring again if they are the same.
+ */
+final class BoundsState {
+
+    private boolean mValid;
+    private Object mContent;
+    private int mContentWidth;
+    private int mContentHeight;
+    private int mViewWidth;
+    private int mViewHeight;
+    private int mScaleType;
+
+    /**
+     * Keeps the inputs.
+     *
+     * @param content the drawable or the bitmap, compared by identity
+     * @return {@code true} if any input has changed since last update,
+     * or it has been reset, so the bounds must be configured
+     */
+    boolean update(Object content, int contentWidth, int contentHeight,
+            int viewWidth, int viewHeight, int scaleType) {
+        if (mValid && mContent == content
+                && mContentWidth == contentWidth && mContentHeight == contentHeight
+                && mViewWidth == viewWidth && mViewHeight == viewHeight
+                && mScaleType == scaleType) {
+            return false;
+        }
+
+        mValid = true;
+        mContent = content;
+        mContentWidth = contentWidth;
+        mContentHeight = contentHeight;
+        mViewWidth = viewWidth;
+        mViewHeight = viewHeight;
+        mScaleType = scaleType;
+        return true;
+    }
+
+    /**
+     * Forgets the inputs, the next {@link #update(Object, int, int, int, int, int)}
+     * returns {@code true}. Call it once the bounds or the draw matrix are changed
+     * in other ways.
+     */
+    void reset() {
+        mValid = false;
+        mContent = null;
+    }
+}
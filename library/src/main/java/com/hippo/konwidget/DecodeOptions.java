@@ -0,0 +1,125 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.konwidget;
+
+/*
+ * Created by Hippo on 10/18/2016.
+ */
+
+import android.graphics.PorterDuff;
+import android.support.annotation.Nullable;
+
+/**
+ * The size and the way a bitmap should be decoded for, and the color filter
+ * to bake into it.
+ */
+final class DecodeOptions {
+
+    public final int targetWidth;
+    public final int targetHeight;
+    @AdvImageView.ScaleType
+    public final int scaleType;
+    @AdvImageView.DecodeMode
+    public final int decodeMode;
+    // Drawn over the decoded bitmap as a PorterDuffColorFilter does, null for none
+    @Nullable
+    public final PorterDuff.Mode bakeMode;
+    public final int bakeColor;
+
+    DecodeOptions(int targetWidth, int targetHeight,
+            @AdvImageView.ScaleType int scaleType, @AdvImageView.DecodeMode int decodeMode) {
+        this(targetWidth, targetHeight, scaleType, decodeMode, null, 0);
+    }
+
+    DecodeOptions(int targetWidth, int targetHeight,
+            @AdvImageView.ScaleType int scaleType, @AdvImageView.DecodeMode int decodeMode,
+            @Nullable PorterDuff.Mode bakeMode, int bakeColor) {
+        this.targetWidth = targetWidth;
+        this.targetHeight = targetHeight;
+        this.scaleType = scaleType;
+        this.decodeMode = decodeMode;
+        this.bakeMode = bakeMode;
+        this.bakeColor = bakeMode != null ? bakeColor : 0;
+    }
+
+    /**
+     * Returns the scale the scale type applies to an image of the size
+     * to fit the target, or {@code 1.0f} if the scale type doesn't scale.
+     */
+    public float getScale(int width, int height) {
+        if (width <= 0 || height <= 0 || targetWidth <= 0 || targetHeight <= 0) {
+            return 1.0f;
+        }
+
+        final float scaleX = (float) targetWidth / (float) width;
+        final float scaleY = (float) targetHeight / (float) height;
+        switch (scaleType) {
+            case AdvImageView.SCALE_TYPE_FIT_XY:
+            case AdvImageView.SCALE_TYPE_CENTER_CROP:
+                // Both edges must be covered
+                return Math.max(scaleX, scaleY);
+            case AdvImageView.SCALE_TYPE_FIT_START:
+            case AdvImageView.SCALE_TYPE_FIT_CENTER:
+            case AdvImageView.SCALE_TYPE_FIT_END:
+            case AdvImageView.SCALE_TYPE_CENTER_INSIDE:
+                return Math.min(scaleX, scaleY);
+            case AdvImageView.SCALE_TYPE_MATRIX:
+            case AdvImageView.SCALE_TYPE_CENTER:
+            default:
+                // The image is drawn at its own size
+                return 1.0f;
+        }
+    }
+
+    /**
+     * Returns the largest power-of-two sample size which keeps
+     * the decoded image not smaller than what will be drawn.
+     */
+    public int getSampleSize(int width, int height) {
+        final float scale = getScale(width, height);
+        int sampleSize = 1;
+        while (sampleSize * 2 * scale <= 1.0f) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof DecodeOptions)) {
+            return false;
+        }
+        final DecodeOptions that = (DecodeOptions) o;
+        return targetWidth == that.targetWidth && targetHeight == that.targetHeight
+                && scaleType == that.scaleType && decodeMode == that.decodeMode
+                && bakeMode == that.bakeMode && bakeColor == that.bakeColor;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = targetWidth;
+        result = 31 * result + targetHeight;
+        result = 31 * result + scaleType;
+        result = 31 * result + decodeMode;
+        result = 31 * result + (bakeMode != null ? bakeMode.hashCode() : 0);
+        result = 31 * result + bakeColor;
+        return result;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.konwidget;
+
+/*
+ * Created by Hippo on 10/18/2016.
+ */
+
+import android.graphics.Bitmap;
+import android.graphics.PorterDuff;
+
+/**
+ * A bitmap decoded by {@link DrawableDecoder} and the size of the image
+ * it's decoded from. It's shared by the {@link DecodedBitmapDrawable}s
+ * and {@link BitmapCache}, and goes to {@link BitmapPool} once
+ * none of them holds it. Once a drawable of it is handed out of the library,
+ * it never goes to the pool, since that holder never releases it.
+ */
+final class DecodedBitmap {
+
+    public final Bitmap bitmap;
+    public final int width;
+    public final int height;
+
+    // The color filter baked into the bitmap, set before it's shared
+    PorterDuff.Mode bakedMode;
+    int bakedColor;
+
+    private int mDrawableCount;
+    private boolean mCached;
+    private boolean mShared;
+    private boolean mPooled;
+
+    DecodedBitmap(Bitmap bitmap, int width, int height) {
+        this.bitmap = bitmap;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Called when a drawable of it is about to be created.
+     *
+     * @return {@code false} if the bitmap has gone to the pool
+     */
+    synchronized boolean obtainDrawable() {
+        if (mPooled) {
+            return false;
+        }
+        mDrawableCount++;
+        return true;
+    }
+
+    /**
+     * Called when a drawable of it will never be drawn again.
+     */
+    void releaseDrawable() {
+        synchronized (this) {
+            mDrawableCount--;
+        }
+        checkPool();
+    }
+
+    /**
+     * Called when a drawable of it, or its constant state, is handed out,
+     * for example by {@link AdvImageView#getDrawable()}. It may be drawn
+     * anywhere after that, so the bitmap is left to the garbage collector.
+     */
+    synchronized void setShared() {
+        mShared = true;
+    }
+
+    void setCached(boolean cached) {
+        synchronized (this) {
+            mCached = cached;
+        }
+        checkPool();
+    }
+
+    private void checkPool() {
+        synchronized (this) {
+            if (mPooled || mShared || mCached || mDrawableCount > 0) {
+                return;
+            }
+            mPooled = true;
+        }
+        BitmapPool.getInstance().put(bitmap);
+    }
+}
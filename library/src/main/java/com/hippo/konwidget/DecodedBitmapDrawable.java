@@ -0,0 +1,89 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.konwidget;
+
+/*
+ * Created by Hippo on 10/18/2016.
+ */
+
+import android.content.res.Resources;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.BitmapDrawable;
+import android.support.annotation.Nullable;
+
+/**
+ * A {@link BitmapDrawable} for a {@link DecodedBitmap}. It reports the size of
+ * the source image as intrinsic size, so measuring and scale types
+ * work as if the full image was decoded.
+ * <p>
+ * Call {@link #release()} once it will never be drawn again,
+ * so the bitmap could be reused. Drawables made from its constant state
+ * are never released, so the bitmap isn't reused once it's taken.
+ */
+class DecodedBitmapDrawable extends BitmapDrawable {
+
+    private final DecodedBitmap mDecodedBitmap;
+    private boolean mReleased;
+
+    private DecodedBitmapDrawable(Resources res, DecodedBitmap decodedBitmap) {
+        super(res, decodedBitmap.bitmap);
+        mDecodedBitmap = decodedBitmap;
+    }
+
+    /**
+     * Creates a drawable of the decoded bitmap.
+     *
+     * @return {@code null} if the bitmap has gone to the pool
+     */
+    @Nullable
+    static DecodedBitmapDrawable obtain(Resources res, DecodedBitmap decodedBitmap) {
+        if (!decodedBitmap.obtainDrawable()) {
+            return null;
+        }
+        return new DecodedBitmapDrawable(res, decodedBitmap);
+    }
+
+    DecodedBitmap getDecodedBitmap() {
+        return mDecodedBitmap;
+    }
+
+    /**
+     * Tells that this drawable will never be drawn again.
+     */
+    void release() {
+        if (!mReleased) {
+            mReleased = true;
+            mDecodedBitmap.releaseDrawable();
+        }
+    }
+
+    @Override
+    public Drawable.ConstantState getConstantState() {
+        mDecodedBitmap.setShared();
+        return super.getConstantState();
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return mDecodedBitmap.width;
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return mDecodedBitmap.height;
+    }
+}
@@ -0,0 +1,465 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.konwidget;
+
+/*
+ * Created by Hippo on 10/18/2016.
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * A size-bounded LRU cache of files in a directory.
+ * <p>
+ * Every operation is recorded in a journal, which is replayed on
+ * {@link #open(File, long)} to restore the LRU order. A file is written
+ * to a temp file first and renamed when committed, and a file without
+ * a committed record, a temp file or a file renamed right before a crash,
+ * is deleted on open, so a crash never leaves a partial or an untracked
+ * file in the cache.
+ * <p>
+ * Journal lines:
+ * <pre>
+ * DIRTY key       an edit of the key began
+ * CLEAN key size  the edit was committed
+ * REMOVE key      the edit was aborted or the file was removed
+ * READ key        the file was read
+ * </pre>
+ */
+public final class DiskCache {
+
+    static final String JOURNAL_FILE = "journal";
+    static final String JOURNAL_FILE_TEMP = "journal.tmp";
+    static final String MAGIC = "konwidget.DiskCache";
+    static final String VERSION = "1";
+
+    private static final String CLEAN = "CLEAN";
+    private static final String DIRTY = "DIRTY";
+    private static final String REMOVE = "REMOVE";
+    private static final String READ = "READ";
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final Pattern KEY_PATTERN = Pattern.compile("[a-z0-9_-]{1,120}");
+
+    // Rebuild the journal when it has this many redundant lines
+    private static final int REDUNDANT_OP_COMPACT_THRESHOLD = 2000;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File mDirectory;
+    private final File mJournalFile;
+    private final File mJournalFileTemp;
+    private final long mMaxSize;
+
+    // Committed entries, key to file size, in access order
+    private final LinkedHashMap<String, Long> mEntries =
+            new LinkedHashMap<String, Long>(0, 0.75f, true);
+    // Keys being edited
+    private final Set<String> mEditing = new HashSet<String>();
+
+    private long mSize;
+    private int mRedundantOpCount;
+    private Writer mJournalWriter;
+
+    private DiskCache(File directory, long maxSize) {
+        mDirectory = directory;
+        mJournalFile = new File(directory, JOURNAL_FILE);
+        mJournalFileTemp = new File(directory, JOURNAL_FILE_TEMP);
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Opens the cache in the directory, creates it if it doesn't exist.
+     *
+     * @param directory a directory only for this cache
+     * @param maxSize the max sum of the sizes of the files in bytes
+     * @throws IOException if the directory can't be used
+     */
+    public static DiskCache open(File directory, long maxSize) throws IOException {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+
+        if (new File(directory, JOURNAL_FILE).exists()) {
+            final DiskCache cache = new DiskCache(directory, maxSize);
+            try {
+                cache.readJournal();
+                cache.deleteUncommittedFiles();
+                // Compact it, and drop a line which is cut by a crash
+                cache.rebuildJournal();
+                cache.trimToSize();
+                return cache;
+            } catch (IOException e) {
+                // The journal is corrupted, start over
+                cache.closeJournalWriter();
+                deleteContents(directory);
+            }
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create directory: " + directory);
+        }
+        final DiskCache cache = new DiskCache(directory, maxSize);
+        cache.rebuildJournal();
+        return cache;
+    }
+
+    private static Writer newJournalWriter(File file, boolean append) throws FileNotFoundException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, append), UTF_8));
+    }
+
+    private static void deleteContents(File directory) {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+    }
+
+    private void readJournal() throws IOException {
+        final BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(mJournalFile), UTF_8));
+        try {
+            if (!MAGIC.equals(reader.readLine()) || !VERSION.equals(reader.readLine())) {
+                throw new IOException("Unexpected journal header");
+            }
+
+            String line = reader.readLine();
+            while (line != null) {
+                final String next = reader.readLine();
+                try {
+                    readJournalLine(line);
+                } catch (IOException e) {
+                    // Only the last line could be cut by a crash
+                    if (next != null) {
+                        throw e;
+                    }
+                }
+                line = next;
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void readJournalLine(String line) throws IOException {
+        final String[] parts = line.split(" ");
+        if (parts.length < 2) {
+            throw new IOException("Unexpected journal line: " + line);
+        }
+
+        final String op = parts[0];
+        final String key = parts[1];
+        if (CLEAN.equals(op) && parts.length == 3) {
+            final long size;
+            try {
+                size = Long.parseLong(parts[2]);
+            } catch (NumberFormatException e) {
+                throw new IOException("Unexpected journal line: " + line);
+            }
+            mEditing.remove(key);
+            final Long oldSize = mEntries.put(key, size);
+            mSize += size - (oldSize != null ? oldSize : 0);
+        } else if (DIRTY.equals(op) && parts.length == 2) {
+            mEditing.add(key);
+        } else if (REMOVE.equals(op) && parts.length == 2) {
+            mEditing.remove(key);
+            final Long oldSize = mEntries.remove(key);
+            if (oldSize != null) {
+                mSize -= oldSize;
+            }
+        } else if (READ.equals(op) && parts.length == 2) {
+            // Update the access order
+            mEntries.get(key);
+        } else {
+            throw new IOException("Unexpected journal line: " + line);
+        }
+    }
+
+    /**
+     * Deletes the files which are not committed in the journal, the temp files
+     * of the edits which were not finished and the files renamed but not
+     * recorded, drops the entries of which file is missing, and takes
+     * the actual file sizes.
+     */
+    private void deleteUncommittedFiles() {
+        mEditing.clear();
+        final File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.equals(mJournalFile) && !file.equals(mJournalFileTemp)
+                        && !mEntries.containsKey(file.getName())) {
+                    //noinspection ResultOfMethodCallIgnored
+                    file.delete();
+                }
+            }
+        }
+
+        mSize = 0;
+        for (Iterator<Map.Entry<String, Long>> i = mEntries.entrySet().iterator(); i.hasNext(); ) {
+            final Map.Entry<String, Long> entry = i.next();
+            final File file = getFile(entry.getKey());
+            if (file.isFile()) {
+                final long size = file.length();
+                entry.setValue(size);
+                mSize += size;
+            } else {
+                i.remove();
+            }
+        }
+    }
+
+    /**
+     * Writes a journal with only the current entries, replaces the old one.
+     */
+    private void rebuildJournal() throws IOException {
+        closeJournalWriter();
+
+        final Writer writer = newJournalWriter(mJournalFileTemp, false);
+        try {
+            writer.write(MAGIC);
+            writer.write('\n');
+            writer.write(VERSION);
+            writer.write('\n');
+            for (String key : mEditing) {
+                writer.write(DIRTY + ' ' + key + '\n');
+            }
+            for (Map.Entry<String, Long> entry : mEntries.entrySet()) {
+                writer.write(CLEAN + ' ' + entry.getKey() + ' ' + entry.getValue() + '\n');
+            }
+        } finally {
+            writer.close();
+        }
+
+        if (!mJournalFileTemp.renameTo(mJournalFile)) {
+            throw new IOException("Can't rename journal");
+        }
+        mJournalWriter = newJournalWriter(mJournalFile, true);
+        mRedundantOpCount = 0;
+    }
+
+    private void closeJournalWriter() {
+        if (mJournalWriter != null) {
+            try {
+                mJournalWriter.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+            mJournalWriter = null;
+        }
+    }
+
+    private void writeJournalLine(String line) throws IOException {
+        checkNotClosed();
+        mJournalWriter.write(line);
+        mJournalWriter.write('\n');
+        mJournalWriter.flush();
+    }
+
+    private void checkNotClosed() {
+        if (mJournalWriter == null) {
+            throw new IllegalStateException("DiskCache is closed");
+        }
+    }
+
+    private static void checkKey(String key) {
+        if (!KEY_PATTERN.matcher(key).matches()) {
+            throw new IllegalArgumentException("Keys must match [a-z0-9_-]{1,120}: " + key);
+        }
+    }
+
+    private File getFile(String key) {
+        return new File(mDirectory, key);
+    }
+
+    private File getTempFile(String key) {
+        return new File(mDirectory, key + TEMP_SUFFIX);
+    }
+
+    private void onOperation() throws IOException {
+        mRedundantOpCount++;
+        if (mRedundantOpCount >= REDUNDANT_OP_COMPACT_THRESHOLD
+                && mRedundantOpCount >= mEntries.size()) {
+            rebuildJournal();
+        }
+    }
+
+    private void trimToSize() throws IOException {
+        while (mSize > mMaxSize) {
+            final String eldest = mEntries.keySet().iterator().next();
+            remove(eldest);
+        }
+    }
+
+    /**
+     * Returns the file of the key, or {@code null} if it's not in the cache.
+     * The file must not be modified.
+     */
+    public synchronized File get(String key) throws IOException {
+        checkNotClosed();
+        checkKey(key);
+        if (mEntries.get(key) == null) {
+            return null;
+        }
+
+        final File file = getFile(key);
+        if (!file.isFile()) {
+            // Deleted by someone else
+            remove(key);
+            return null;
+        }
+
+        writeJournalLine(READ + ' ' + key);
+        onOperation();
+        return file;
+    }
+
+    /**
+     * Begins to write the file of the key. Write to the returned file,
+     * then call {@link #commitEdit(String, boolean)}.
+     *
+     * @return the temp file to write, or {@code null} if the key is being edited
+     */
+    public synchronized File beginEdit(String key) throws IOException {
+        checkNotClosed();
+        checkKey(key);
+        if (!mEditing.add(key)) {
+            return null;
+        }
+
+        writeJournalLine(DIRTY + ' ' + key);
+        return getTempFile(key);
+    }
+
+    /**
+     * Finishes the edit of the key.
+     *
+     * @param success {@code true} to publish the written file,
+     *                {@code false} to discard it
+     */
+    public synchronized void commitEdit(String key, boolean success) throws IOException {
+        checkNotClosed();
+        if (!mEditing.remove(key)) {
+            throw new IllegalStateException("Not editing: " + key);
+        }
+
+        final File temp = getTempFile(key);
+        final File file = getFile(key);
+        if (success && temp.isFile()) {
+            // Replacing is not atomic on every file system, delete first
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            if (temp.renameTo(file)) {
+                final long size = file.length();
+                final Long oldSize = mEntries.put(key, size);
+                mSize += size - (oldSize != null ? oldSize : 0);
+                writeJournalLine(CLEAN + ' ' + key + ' ' + size);
+                onOperation();
+                trimToSize();
+                return;
+            }
+        }
+
+        //noinspection ResultOfMethodCallIgnored
+        temp.delete();
+        final Long oldSize = mEntries.remove(key);
+        if (oldSize != null) {
+            mSize -= oldSize;
+        }
+        writeJournalLine(REMOVE + ' ' + key);
+        onOperation();
+    }
+
+    /**
+     * Removes the file of the key.
+     *
+     * @return {@code true} if it was in the cache
+     */
+    public synchronized boolean remove(String key) throws IOException {
+        checkNotClosed();
+        checkKey(key);
+        final Long size = mEntries.remove(key);
+        if (size == null) {
+            return false;
+        }
+
+        //noinspection ResultOfMethodCallIgnored
+        getFile(key).delete();
+        mSize -= size;
+        writeJournalLine(REMOVE + ' ' + key);
+        onOperation();
+        return true;
+    }
+
+    /**
+     * Removes all files which are not being edited.
+     */
+    public synchronized void clear() throws IOException {
+        checkNotClosed();
+        for (String key : new ArrayList<String>(mEntries.keySet())) {
+            remove(key);
+        }
+    }
+
+    /**
+     * Returns the sum of the sizes of the files in bytes.
+     */
+    public synchronized long size() {
+        return mSize;
+    }
+
+    /**
+     * Returns the max sum of the sizes of the files in bytes.
+     */
+    public long maxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * Returns the directory of this cache.
+     */
+    public File getDirectory() {
+        return mDirectory;
+    }
+
+    /**
+     * Closes the journal. The cache can't be used anymore.
+     */
+    public synchronized void close() {
+        closeJournalWriter();
+    }
+}
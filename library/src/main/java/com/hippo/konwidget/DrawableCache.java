@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.konwidget;
+
+/*
+ * Created by Hippo on 10/18/2016.
+ */
+
+import android.annotation.TargetApi;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.support.annotation.DrawableRes;
+import android.support.annotation.Nullable;
+import android.util.SparseArray;
+
+import java.util.WeakHashMap;
+
+/**
+ * Caches the {@link Drawable.ConstantState} of drawable resources per theme,
+ * so loading the same resource again is only a
+ * {@link Drawable.ConstantState#newDrawable(Resources, Resources.Theme)}.
+ * <p>
+ * The configuration the states are loaded with is kept. All states are dropped
+ * once the configuration of the resources differs from it, as density,
+ * night mode, layout direction or any qualifier may select other resources.
+ */
+final class DrawableCache {
+    private DrawableCache() {}
+
+    // Themes are held weakly, states of a finished activity go with it
+    private static final WeakHashMap<Resources.Theme, SparseArray<Drawable.ConstantState>> sStates =
+            new WeakHashMap<Resources.Theme, SparseArray<Drawable.ConstantState>>();
+    private static Configuration sConfiguration;
+
+    private static void checkConfiguration(Resources res) {
+        final Configuration configuration = res.getConfiguration();
+        if (sConfiguration == null || sConfiguration.diff(configuration) != 0) {
+            sStates.clear();
+            sConfiguration = new Configuration(configuration);
+        }
+    }
+
+    /**
+     * Creates a new drawable from the cached state.
+     *
+     * @return {@code null} if it's not cached
+     */
+    @Nullable
+    static synchronized Drawable get(Resources res, @Nullable Resources.Theme theme,
+            @DrawableRes int resId) {
+        checkConfiguration(res);
+        final SparseArray<Drawable.ConstantState> states = sStates.get(theme);
+        if (states == null) {
+            return null;
+        }
+        final Drawable.ConstantState state = states.get(resId);
+        if (state == null) {
+            return null;
+        }
+        if (theme != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            return newDrawable(state, res, theme);
+        } else {
+            return state.newDrawable(res);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static Drawable newDrawable(Drawable.ConstantState state,
+            Resources res, Resources.Theme theme) {
+        return state.newDrawable(res, theme);
+    }
+
+    /**
+     * Keeps the state of the drawable loaded from the resource.
+     * Drawables without state are skipped.
+     */
+    static synchronized void put(Resources res, @Nullable Resources.Theme theme,
+            @DrawableRes int resId, Drawable drawable) {
+        final Drawable.ConstantState state = drawable.getConstantState();
+        if (state == null) {
+            return;
+        }
+        checkConfiguration(res);
+        SparseArray<Drawable.ConstantState> states = sStates.get(theme);
+        if (states == null) {
+            states = new SparseArray<Drawable.ConstantState>();
+            sStates.put(theme, states);
+        }
+        states.put(resId, state);
+    }
+
+    /**
+     * Drops all states.
+     */
+    static synchronized void clear() {
+        sStates.clear();
+    }
+}
@@ -0,0 +1,852 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.konwidget;
+
+/*
+ * Created by Hippo on 10/18/2016.
+ */
+
+import android.annotation.TargetApi;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.PorterDuff;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Looper;
+import android.support.annotation.DrawableRes;
+import android.support.annotation.Nullable;
+import android.support.v7.content.res.AppCompatResources;
+import android.text.TextUtils;
+import android.util.Log;
+import android.util.TypedValue;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Resolves resource ids and Uris to drawables. It only depends on
+ * a {@link Context}, so it could be called from any thread.
+ */
+final class DrawableDecoder {
+    private DrawableDecoder() {}
+
+    private static final String LOG_TAG = DrawableDecoder.class.getSimpleName();
+
+    // The preview is decoded with a sample size this times larger
+    private static final int PREVIEW_SAMPLE_MULTIPLE = 8;
+    // Don't preview images smaller than this after sampling
+    private static final int PREVIEW_MIN_PIXELS = 512 * 512;
+    private static final float MAX_THUMBNAIL_ASPECT_DIFF = 0.02f;
+    // Don't scan the alpha of bitmaps larger than this
+    private static final int MAX_ALPHA_SCAN_PIXELS = 2048 * 2048;
+
+    /**
+     * Loads a drawable resource, supports vector drawables.
+     * The state of it is cached by {@link DrawableCache}.
+     *
+     * @return {@code null} if the resource can't be found
+     */
+    @Nullable
+    public static Drawable decodeResource(Context context, @DrawableRes int resId) {
+        final Resources res = context.getResources();
+        final Resources.Theme theme = context.getTheme();
+        final Drawable cached = DrawableCache.get(res, theme, resId);
+        if (cached != null) {
+            return cached;
+        }
+
+        try {
+            final Drawable drawable = AppCompatResources.getDrawable(context, resId);
+            if (drawable != null) {
+                DrawableCache.put(res, theme, resId, drawable);
+            }
+            return drawable;
+        } catch (Exception e) {
+            Log.w(LOG_TAG, "Unable to find resource: " + resId, e);
+            return null;
+        }
+    }
+
+    /**
+     * Loads a drawable from the Uri. Supported schemes are
+     * {@link ContentResolver#SCHEME_ANDROID_RESOURCE},
+     * {@link ContentResolver#SCHEME_CONTENT} and
+     * {@link ContentResolver#SCHEME_FILE}. Other Uris are treated as file paths.
+     *
+     * @return {@code null} if the Uri can't be decoded
+     */
+    @Nullable
+    public static Drawable decodeUri(Context context, Uri uri) {
+        final String scheme = uri.getScheme();
+        if (ContentResolver.SCHEME_ANDROID_RESOURCE.equals(scheme)) {
+            try {
+                // Load drawable through Resources, to get the source density information
+                final OpenResourceIdResult r = getResourceId(context, uri);
+                return getDrawableFromId(r.r, r.id, context.getTheme());
+            } catch (Exception e) {
+                Log.w(LOG_TAG, "Unable to open content: " + uri, e);
+            }
+        } else if (ContentResolver.SCHEME_CONTENT.equals(scheme)
+                || ContentResolver.SCHEME_FILE.equals(scheme)) {
+            InputStream stream = null;
+            try {
+                stream = context.getContentResolver().openInputStream(uri);
+                return orient(context, uri, Drawable.createFromResourceStream(
+                        context.getResources(), null, stream, null));
+            } catch (Exception e) {
+                Log.w(LOG_TAG, "Unable to open content: " + uri, e);
+            } finally {
+                if (stream != null) {
+                    try {
+                        stream.close();
+                    } catch (IOException e) {
+                        Log.w(LOG_TAG, "Unable to close content: " + uri, e);
+                    }
+                }
+            }
+        } else {
+            return orient(context, uri, Drawable.createFromPath(uri.toString()));
+        }
+        return null;
+    }
+
+    /**
+     * Applies the EXIF orientation of the Uri to the bitmap of the drawable.
+     */
+    @Nullable
+    private static Drawable orient(Context context, Uri uri, @Nullable Drawable drawable) {
+        if (!(drawable instanceof BitmapDrawable)) {
+            return drawable;
+        }
+        final Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
+        if (bitmap == null) {
+            return drawable;
+        }
+        final Bitmap oriented = applyOrientation(bitmap, getOrientation(context, uri));
+        return oriented != bitmap ? new BitmapDrawable(context.getResources(), oriented) : drawable;
+    }
+
+    /**
+     * Loads a drawable from the Uri, downscaled to the target size in the options.
+     * android.resource Uris and {@link AdvImageView#DECODE_MODE_FULL}
+     * are decoded as {@link #decodeUri(Context, Uri)} does.
+     *
+     * @return {@code null} if the Uri can't be decoded
+     */
+    @Nullable
+    public static Drawable decodeUri(Context context, Uri uri, @Nullable DecodeOptions options) {
+        if (options == null || options.decodeMode == AdvImageView.DECODE_MODE_FULL
+                || ContentResolver.SCHEME_ANDROID_RESOURCE.equals(uri.getScheme())) {
+            final Drawable drawable = decodeUri(context, uri);
+            // Resource bitmaps are shared by the framework, leave them as they are.
+            // Other bitmaps are scanned for alpha once they are wrapped by newDrawable().
+            if (drawable != null && drawable.getClass() == BitmapDrawable.class
+                    && options != null && options.bakeMode != null
+                    && !ContentResolver.SCHEME_ANDROID_RESOURCE.equals(uri.getScheme())) {
+                final Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
+                if (bitmap != null) {
+                    return newDrawable(context, bake(bitmap, options),
+                            drawable.getIntrinsicWidth(), drawable.getIntrinsicHeight(), options);
+                }
+            }
+            return drawable;
+        }
+
+        // Read the size first
+        final BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inJustDecodeBounds = true;
+        decodeStream(context, uri, opts);
+        if (opts.outWidth <= 0 || opts.outHeight <= 0) {
+            Log.w(LOG_TAG, "Unable to decode bounds: " + uri);
+            return null;
+        }
+        final int orientation = getOrientation(context, uri, opts);
+        // The size as it's shown
+        final boolean transposed = isTransposed(orientation);
+        final int width = transposed ? opts.outHeight : opts.outWidth;
+        final int height = transposed ? opts.outWidth : opts.outHeight;
+
+        if (options.decodeMode == AdvImageView.DECODE_MODE_TILED
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD_MR1) {
+            final Drawable drawable = decodeTiled(context, uri, options, width, height, orientation);
+            if (drawable != null) {
+                return drawable;
+            }
+            // Not supported by BitmapRegionDecoder, decode it as a whole
+        }
+
+        opts.inJustDecodeBounds = false;
+        opts.inSampleSize = options.getSampleSize(width, height);
+        Bitmap bitmap = decodeStreamReusing(context, uri, opts);
+        if (bitmap == null) {
+            return null;
+        }
+        bitmap = applyOrientation(bitmap, orientation);
+
+        if (options.decodeMode == AdvImageView.DECODE_MODE_EXACT) {
+            bitmap = scaleExactly(bitmap, width, height, options);
+        }
+        bitmap = bake(bitmap, options);
+
+        return newDrawable(context, bitmap, width, height, options);
+    }
+
+    /**
+     * Decodes a quick low-resolution preview of a content or file image.
+     * It's the EXIF thumbnail if the file has one of the same aspect ratio,
+     * otherwise the image decoded with a sample size
+     * {@link #PREVIEW_SAMPLE_MULTIPLE} times larger than the final one.
+     * The drawable reports the size of the source image as intrinsic size.
+     *
+     * @return {@code null} if the image is too small to need a preview,
+     * or it can't be decoded
+     */
+    @Nullable
+    public static Drawable decodePreview(Context context, Uri uri, @Nullable DecodeOptions options) {
+        final String scheme = uri.getScheme();
+        if (!ContentResolver.SCHEME_CONTENT.equals(scheme)
+                && !ContentResolver.SCHEME_FILE.equals(scheme)) {
+            return null;
+        }
+
+        final BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inJustDecodeBounds = true;
+        decodeStream(context, uri, opts);
+        if (opts.outWidth <= 0 || opts.outHeight <= 0) {
+            return null;
+        }
+        final int orientation = getOrientation(context, uri, opts);
+        final boolean transposed = isTransposed(orientation);
+        final int width = transposed ? opts.outHeight : opts.outWidth;
+        final int height = transposed ? opts.outWidth : opts.outHeight;
+
+        final int sampleSize = options != null && options.decodeMode != AdvImageView.DECODE_MODE_FULL
+                ? options.getSampleSize(width, height) : 1;
+        if ((long) (width / sampleSize) * (height / sampleSize) < PREVIEW_MIN_PIXELS) {
+            // The final image is quick enough
+            return null;
+        }
+
+        if (ContentResolver.SCHEME_FILE.equals(scheme)) {
+            // The thumbnail is stored as the image, before orientation
+            final Bitmap thumbnail = decodeExifThumbnail(uri.getPath(),
+                    opts.outWidth, opts.outHeight);
+            if (thumbnail != null) {
+                return newDrawable(context, bake(applyOrientation(thumbnail, orientation), options),
+                        width, height, options);
+            }
+        }
+
+        opts.inJustDecodeBounds = false;
+        opts.inSampleSize = sampleSize * PREVIEW_SAMPLE_MULTIPLE;
+        final Bitmap bitmap = decodeStream(context, uri, opts);
+        if (bitmap == null) {
+            return null;
+        }
+        return newDrawable(context, bake(applyOrientation(bitmap, orientation), options),
+                width, height, options);
+    }
+
+    /**
+     * Reads the size of the image from its header, as it's shown with
+     * the EXIF orientation applied. It doesn't decode pixels.
+     *
+     * @return the width and height packed by {@link ImageSizing#pack(int, int)},
+     * or {@code 0} if the header can't be read
+     */
+    static long probeSize(Context context, Uri uri) {
+        final BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inJustDecodeBounds = true;
+        decodeStream(context, uri, opts);
+        if (opts.outWidth <= 0 || opts.outHeight <= 0) {
+            return 0;
+        }
+        if (isTransposed(getOrientation(context, uri, opts))) {
+            return ImageSizing.pack(opts.outHeight, opts.outWidth);
+        } else {
+            return ImageSizing.pack(opts.outWidth, opts.outHeight);
+        }
+    }
+
+    /**
+     * Returns the EXIF orientation of the image if it's a JPEG, as told by
+     * the bounds decoded. Other formats are not read again for EXIF.
+     *
+     * @param bounds the options the bounds of the image are decoded with
+     */
+    private static int getOrientation(Context context, Uri uri, BitmapFactory.Options bounds) {
+        return "image/jpeg".equals(bounds.outMimeType)
+                ? getOrientation(context, uri) : ExifInterface.ORIENTATION_NORMAL;
+    }
+
+    /**
+     * Returns the EXIF orientation of the image. It's only read from files,
+     * and content on API 24+.
+     *
+     * @return {@link ExifInterface#ORIENTATION_NORMAL} if unknown
+     */
+    private static int getOrientation(Context context, Uri uri) {
+        final String scheme = uri.getScheme();
+        try {
+            final ExifInterface exif;
+            if (ContentResolver.SCHEME_FILE.equals(scheme)) {
+                exif = new ExifInterface(uri.getPath());
+            } else if (ContentResolver.SCHEME_CONTENT.equals(scheme)) {
+                if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
+                    return ExifInterface.ORIENTATION_NORMAL;
+                }
+                return getOrientationFromStream(context, uri);
+            } else if (ContentResolver.SCHEME_ANDROID_RESOURCE.equals(scheme)) {
+                return ExifInterface.ORIENTATION_NORMAL;
+            } else {
+                exif = new ExifInterface(uri.toString());
+            }
+            return exif.getAttributeInt(ExifInterface.TAG_ORIENTATION,
+                    ExifInterface.ORIENTATION_NORMAL);
+        } catch (Exception e) {
+            Log.w(LOG_TAG, "Unable to read EXIF: " + uri, e);
+            return ExifInterface.ORIENTATION_NORMAL;
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.N)
+    private static int getOrientationFromStream(Context context, Uri uri) throws IOException {
+        InputStream stream = null;
+        try {
+            stream = context.getContentResolver().openInputStream(uri);
+            if (stream == null) {
+                return ExifInterface.ORIENTATION_NORMAL;
+            }
+            return new ExifInterface(stream).getAttributeInt(ExifInterface.TAG_ORIENTATION,
+                    ExifInterface.ORIENTATION_NORMAL);
+        } finally {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                    Log.w(LOG_TAG, "Unable to close content: " + uri, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns whether width and height are swapped by the orientation.
+     */
+    static boolean isTransposed(int orientation) {
+        return orientation == ExifInterface.ORIENTATION_TRANSPOSE
+                || orientation == ExifInterface.ORIENTATION_ROTATE_90
+                || orientation == ExifInterface.ORIENTATION_TRANSVERSE
+                || orientation == ExifInterface.ORIENTATION_ROTATE_270;
+    }
+
+    /**
+     * Rotates and flips the bitmap as the EXIF orientation.
+     *
+     * @return the bitmap if it's normal, otherwise a new bitmap,
+     * the old one goes to {@link BitmapPool}
+     */
+    private static Bitmap applyOrientation(Bitmap bitmap, int orientation) {
+        final Matrix matrix = new Matrix();
+        if (!setOrientationMatrix(orientation, matrix)) {
+            return bitmap;
+        }
+
+        final Bitmap oriented;
+        try {
+            oriented = Bitmap.createBitmap(bitmap, 0, 0,
+                    bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+        } catch (OutOfMemoryError e) {
+            Log.w(LOG_TAG, "Out of memory to apply orientation", e);
+            return bitmap;
+        }
+        if (oriented != bitmap) {
+            BitmapPool.getInstance().put(bitmap);
+        }
+        return oriented;
+    }
+
+    /**
+     * Sets the matrix to rotate and flip as the EXIF orientation,
+     * around the origin.
+     *
+     * @return {@code false} if the orientation is normal, the matrix isn't set
+     */
+    static boolean setOrientationMatrix(int orientation, Matrix matrix) {
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                matrix.setScale(-1.0f, 1.0f);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                matrix.setRotate(180.0f);
+                break;
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                matrix.setScale(1.0f, -1.0f);
+                break;
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                matrix.setRotate(90.0f);
+                matrix.postScale(-1.0f, 1.0f);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                matrix.setRotate(90.0f);
+                break;
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                matrix.setRotate(-90.0f);
+                matrix.postScale(-1.0f, 1.0f);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                matrix.setRotate(-90.0f);
+                break;
+            default:
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Decodes the thumbnail embedded in the EXIF of the file.
+     *
+     * @return {@code null} if there is no thumbnail, or its aspect ratio
+     * isn't the same as the image
+     */
+    @Nullable
+    private static Bitmap decodeExifThumbnail(String path, int width, int height) {
+        final byte[] data;
+        try {
+            final ExifInterface exif = new ExifInterface(path);
+            if (!exif.hasThumbnail()) {
+                return null;
+            }
+            data = exif.getThumbnail();
+        } catch (Exception e) {
+            Log.w(LOG_TAG, "Unable to read EXIF: " + path, e);
+            return null;
+        }
+        if (data == null) {
+            return null;
+        }
+
+        final BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, opts);
+        if (opts.outWidth <= 0 || opts.outHeight <= 0
+                || Math.abs((float) opts.outWidth / opts.outHeight - (float) width / height)
+                > MAX_THUMBNAIL_ASPECT_DIFF) {
+            // Letterboxed thumbnails are stretched
+            return null;
+        }
+
+        opts.inJustDecodeBounds = false;
+        return BitmapFactory.decodeByteArray(data, 0, data.length, opts);
+    }
+
+    /**
+     * Opens a {@link BitmapRegionDecoder} for the Uri, and decodes a base image
+     * which fits the target size. The tiles and the base image are not rotated,
+     * {@link TiledDrawable} draws them with the orientation.
+     *
+     * @param width the width of the image as it's shown
+     * @param height the height of the image as it's shown
+     * @return {@code null} if the image can't be decoded by regions
+     */
+    @TargetApi(Build.VERSION_CODES.GINGERBREAD_MR1)
+    @Nullable
+    private static TiledDrawable decodeTiled(Context context, Uri uri, DecodeOptions options,
+            int width, int height, int orientation) {
+        BitmapRegionDecoder decoder = null;
+        InputStream stream = null;
+        try {
+            stream = openStream(context, uri);
+            decoder = BitmapRegionDecoder.newInstance(stream, false);
+        } catch (Exception e) {
+            Log.w(LOG_TAG, "Unable to decode by regions: " + uri, e);
+            return null;
+        } finally {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                    Log.w(LOG_TAG, "Unable to close content: " + uri, e);
+                }
+            }
+        }
+
+        final BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inSampleSize = new DecodeOptions(options.targetWidth, options.targetHeight,
+                AdvImageView.SCALE_TYPE_FIT_CENTER, AdvImageView.DECODE_MODE_SAMPLE)
+                .getSampleSize(width, height);
+        final Bitmap base = decodeStream(context, uri, opts);
+        if (base == null) {
+            decoder.recycle();
+            return null;
+        }
+        markOpaque(base);
+
+        return new TiledDrawable(decoder, base, opts.inSampleSize, orientation);
+    }
+
+    /**
+     * Wraps a bitmap which no one else holds.
+     */
+    static DecodedBitmapDrawable newDrawable(Context context, Bitmap bitmap, int width, int height) {
+        return newDrawable(context, bitmap, width, height, null);
+    }
+
+    /**
+     * Wraps a bitmap which no one else holds, which has the color filter
+     * in the options baked. The bitmap is scanned for alpha here, once per
+     * decode, and the result stays in the bitmap of the {@link DecodedBitmap},
+     * so the drawables from {@link BitmapCache} don't scan it again.
+     */
+    static DecodedBitmapDrawable newDrawable(Context context, Bitmap bitmap, int width, int height,
+            @Nullable DecodeOptions options) {
+        markOpaque(bitmap);
+        final DecodedBitmap decodedBitmap = new DecodedBitmap(bitmap, width, height);
+        if (options != null) {
+            decodedBitmap.bakedMode = options.bakeMode;
+            decodedBitmap.bakedColor = options.bakeColor;
+        }
+        // A new DecodedBitmap can't be in the pool
+        //noinspection ConstantConditions
+        return DecodedBitmapDrawable.obtain(context.getResources(), decodedBitmap);
+    }
+
+    /**
+     * Draws the color filter in the options over the bitmap,
+     * as a {@link android.graphics.PorterDuffColorFilter} does.
+     *
+     * @return the bitmap, or a mutable copy of it if it's immutable
+     */
+    private static Bitmap bake(Bitmap bitmap, @Nullable DecodeOptions options) {
+        if (options == null || options.bakeMode == null) {
+            return bitmap;
+        }
+        if (!bitmap.hasAlpha() && !keepsOpaque(options.bakeMode)) {
+            // Opaque decodes, like JPEG, would drop the alpha the color filter makes
+            if (bitmap.isMutable() && bitmap.getConfig() == Bitmap.Config.ARGB_8888
+                    && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB_MR1) {
+                setHasAlpha(bitmap, true);
+            } else {
+                final Bitmap translucent = Bitmap.createBitmap(bitmap.getWidth(), bitmap.getHeight(),
+                        Bitmap.Config.ARGB_8888);
+                new Canvas(translucent).drawBitmap(bitmap, 0, 0, null);
+                BitmapPool.getInstance().put(bitmap);
+                bitmap = translucent;
+            }
+        }
+        if (!bitmap.isMutable()) {
+            bitmap = bitmap.copy(Bitmap.Config.ARGB_8888, true);
+        }
+        new Canvas(bitmap).drawColor(options.bakeColor, options.bakeMode);
+        return bitmap;
+    }
+
+    /**
+     * Returns whether drawing any color with the mode over opaque pixels
+     * keeps them opaque.
+     */
+    private static boolean keepsOpaque(PorterDuff.Mode mode) {
+        return mode == PorterDuff.Mode.SRC_OVER || mode == PorterDuff.Mode.SRC_ATOP
+                || mode == PorterDuff.Mode.DST || mode == PorterDuff.Mode.DST_OVER
+                || mode == PorterDuff.Mode.DARKEN || mode == PorterDuff.Mode.LIGHTEN
+                || mode == PorterDuff.Mode.SCREEN;
+    }
+
+    /**
+     * Clears {@link Bitmap#hasAlpha()} of the bitmap if all pixels of it are opaque,
+     * so drawables of it report {@link android.graphics.PixelFormat#OPAQUE}.
+     * Decoders keep the alpha channel of formats which have one, even if
+     * it's never used. The scan stops at the first translucent pixel,
+     * the corners are checked first as they are the most likely ones.
+     * It's skipped on the UI thread, a sync decode isn't worth a frame.
+     */
+    private static void markOpaque(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB_MR1
+                || !bitmap.hasAlpha() || bitmap.getConfig() != Bitmap.Config.ARGB_8888
+                || Looper.myLooper() == Looper.getMainLooper()) {
+            return;
+        }
+        final int width = bitmap.getWidth();
+        final int height = bitmap.getHeight();
+        if ((long) width * height > MAX_ALPHA_SCAN_PIXELS) {
+            return;
+        }
+        if (isOpaque(bitmap, width, height)) {
+            setHasAlpha(bitmap, false);
+        }
+    }
+
+    private static boolean isOpaque(Bitmap bitmap, int width, int height) {
+        if (bitmap.getPixel(0, 0) >>> 24 != 0xff
+                || bitmap.getPixel(width - 1, 0) >>> 24 != 0xff
+                || bitmap.getPixel(0, height - 1) >>> 24 != 0xff
+                || bitmap.getPixel(width - 1, height - 1) >>> 24 != 0xff) {
+            return false;
+        }
+        final int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+            for (int x = 0; x < width; x++) {
+                if (row[x] >>> 24 != 0xff) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB_MR1)
+    private static void setHasAlpha(Bitmap bitmap, boolean hasAlpha) {
+        bitmap.setHasAlpha(hasAlpha);
+    }
+
+    /**
+     * Decodes as {@link #decodeStream(Context, Uri, BitmapFactory.Options)},
+     * tries to reuse a bitmap in {@link BitmapPool}.
+     */
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    @Nullable
+    private static Bitmap decodeStreamReusing(Context context, Uri uri, BitmapFactory.Options opts) {
+        if (!BitmapPool.isSupported()) {
+            return decodeStream(context, uri, opts);
+        }
+
+        // The decoder may round the size up
+        final int sampleSize = opts.inSampleSize;
+        final int width = (opts.outWidth + sampleSize - 1) / sampleSize;
+        final int height = (opts.outHeight + sampleSize - 1) / sampleSize;
+        final Bitmap inBitmap = BitmapPool.getInstance().get(width * height * 4);
+
+        opts.inMutable = true;
+        opts.inBitmap = inBitmap;
+        Bitmap bitmap = decodeStream(context, uri, opts);
+        if (bitmap == null && inBitmap != null) {
+            // The bitmap may not fit, try again without it
+            opts.inBitmap = null;
+            BitmapPool.getInstance().put(inBitmap);
+            bitmap = decodeStream(context, uri, opts);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Scales the sampled bitmap down to the size it will be drawn.
+     */
+    private static Bitmap scaleExactly(Bitmap bitmap, int width, int height, DecodeOptions options) {
+        final float scale = options.getScale(width, height);
+        if (scale >= 1.0f) {
+            return bitmap;
+        }
+
+        final int dstWidth = Math.max(1, Math.round(width * scale));
+        final int dstHeight = Math.max(1, Math.round(height * scale));
+        if (bitmap.getWidth() <= dstWidth && bitmap.getHeight() <= dstHeight) {
+            return bitmap;
+        }
+
+        final Bitmap scaled = Bitmap.createScaledBitmap(bitmap, dstWidth, dstHeight, true);
+        if (scaled != bitmap) {
+            BitmapPool.getInstance().put(bitmap);
+        }
+        return scaled;
+    }
+
+    /**
+     * Decodes a file written by {@link #encodeCacheFile(Bitmap, int, int, File)}.
+     *
+     * @return {@code null} if failed
+     */
+    @Nullable
+    public static DecodedBitmapDrawable decodeCacheFile(Context context, File file,
+            @Nullable DecodeOptions options) {
+        DataInputStream stream = null;
+        try {
+            stream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            final int width = stream.readInt();
+            final int height = stream.readInt();
+            final Bitmap bitmap = BitmapFactory.decodeStream(stream);
+            if (bitmap == null) {
+                return null;
+            }
+            // The color filter in the options was baked before written
+            return newDrawable(context, bitmap, width, height, options);
+        } catch (Exception e) {
+            Log.w(LOG_TAG, "Unable to decode cache file: " + file, e);
+            return null;
+        } finally {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                    Log.w(LOG_TAG, "Unable to close cache file: " + file, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the downscaled bitmap and the size of the source image to the file.
+     *
+     * @return {@code true} if succeeded
+     */
+    public static boolean encodeCacheFile(Bitmap bitmap, int width, int height, File file) {
+        DataOutputStream stream = null;
+        try {
+            stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            stream.writeInt(width);
+            stream.writeInt(height);
+            if (bitmap.hasAlpha()) {
+                return bitmap.compress(Bitmap.CompressFormat.PNG, 100, stream);
+            } else {
+                return bitmap.compress(Bitmap.CompressFormat.JPEG, 90, stream);
+            }
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Unable to write cache file: " + file, e);
+            return false;
+        } finally {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                    Log.w(LOG_TAG, "Unable to close cache file: " + file, e);
+                }
+            }
+        }
+    }
+
+    private static InputStream openStream(Context context, Uri uri) throws IOException {
+        final String scheme = uri.getScheme();
+        if (ContentResolver.SCHEME_CONTENT.equals(scheme)
+                || ContentResolver.SCHEME_FILE.equals(scheme)) {
+            return context.getContentResolver().openInputStream(uri);
+        } else {
+            return new FileInputStream(uri.toString());
+        }
+    }
+
+    /**
+     * Decodes the stream of the Uri with the options.
+     *
+     * @return {@code null} if failed or {@link BitmapFactory.Options#inJustDecodeBounds} is set
+     */
+    @Nullable
+    private static Bitmap decodeStream(Context context, Uri uri, BitmapFactory.Options opts) {
+        InputStream stream = null;
+        try {
+            stream = openStream(context, uri);
+            return BitmapFactory.decodeStream(stream, null, opts);
+        } catch (Exception e) {
+            Log.w(LOG_TAG, "Unable to open content: " + uri, e);
+            return null;
+        } finally {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                    Log.w(LOG_TAG, "Unable to close content: " + uri, e);
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Drawable getDrawableFromId(Resources resources, @DrawableRes int id, Resources.Theme theme) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            return resources.getDrawable(id, theme);
+        } else if (Build.VERSION.SDK_INT >= 16) {
+            return resources.getDrawable(id);
+        } else {
+            // Prior to JELLY_BEAN, Resources.getDrawable() would not correctly
+            // retrieve the final configuration density when the resource ID
+            // is a reference another Drawable resource. As a workaround, try
+            // to resolve the drawable reference manually.
+            final TypedValue value = new TypedValue();
+            resources.getValue(id, value, true);
+            final int resolvedId = value.resourceId;
+            return resources.getDrawable(resolvedId);
+        }
+    }
+
+    /**
+     * A resource identified by the {@link Resources} that contains it, and a resource id.
+     */
+    private static class OpenResourceIdResult {
+        public Resources r;
+        public int id;
+    }
+
+    /**
+     * Resolves an android.resource URI to a {@link Resources} and a resource id.
+     * Both are cached by {@link ResourcesCache}.
+     */
+    private static OpenResourceIdResult getResourceId(Context context, Uri uri) throws FileNotFoundException {
+        final String authority = uri.getAuthority();
+        final Resources r;
+        if (TextUtils.isEmpty(authority)) {
+            throw new FileNotFoundException("No authority: " + uri);
+        } else {
+            try {
+                r = ResourcesCache.getResources(context, authority);
+            } catch (PackageManager.NameNotFoundException ex) {
+                throw new FileNotFoundException("No package found for authority: " + uri);
+            }
+        }
+        final List<String> path = uri.getPathSegments();
+        if (path == null) {
+            throw new FileNotFoundException("No path: " + uri);
+        }
+        final int len = path.size();
+        final int id;
+        if (len == 1) {
+            try {
+                id = Integer.parseInt(path.get(0));
+            } catch (NumberFormatException e) {
+                throw new FileNotFoundException("Single path segment is not a resource ID: " + uri);
+            }
+        } else if (len == 2) {
+            id = ResourcesCache.getIdentifier(r, authority, path.get(0), path.get(1));
+        } else {
+            throw new FileNotFoundException("More than two path segments: " + uri);
+        }
+        if (id == 0) {
+            throw new FileNotFoundException("No resource found for: " + uri);
+        }
+        final OpenResourceIdResult res = new OpenResourceIdResult();
+        res.r = r;
+        res.id = id;
+        return res;
+    }
+}
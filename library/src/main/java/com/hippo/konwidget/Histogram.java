@@ -0,0 +1,138 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.konwidget;
+
+/*
+ * Created by Hippo on 10/18/2016.
+ */
+
+/**
+ * Counts non-negative values in log-linear buckets, for percentiles
+ * in constant memory. Values below 32 are exact, others are kept
+ * with 4 bits of precision below the leading bit, about 6% error.
+ * Recording never allocates. It's not thread-safe.
+ */
+final class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    // The index of Long.MAX_VALUE plus one
+    private static final int BUCKET_COUNT = getIndex(Long.MAX_VALUE) + 1;
+
+    private final long[] mCounts = new long[BUCKET_COUNT];
+    private long mCount;
+    private long mSum;
+    private long mMin = Long.MAX_VALUE;
+    private long mMax;
+
+    static int getIndex(long value) {
+        if (value < 2 * SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        // Keep the leading bit and SUB_BUCKET_BITS bits below it
+        final int shift = 64 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS + 1);
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    /**
+     * Returns the largest value in the bucket.
+     */
+    static long getUpperBound(int index) {
+        if (index < 2 * SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        final long sub = (index & (SUB_BUCKET_COUNT - 1)) + SUB_BUCKET_COUNT;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    /**
+     * Counts the value. Negative values are counted as {@code 0}.
+     */
+    void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        mCounts[getIndex(value)]++;
+        mCount++;
+        mSum += value;
+        mMin = Math.min(mMin, value);
+        mMax = Math.max(mMax, value);
+    }
+
+    long getCount() {
+        return mCount;
+    }
+
+    long getSum() {
+        return mSum;
+    }
+
+    /**
+     * Returns the smallest value, or {@code 0} if empty.
+     */
+    long getMin() {
+        return mCount != 0 ? mMin : 0;
+    }
+
+    long getMax() {
+        return mMax;
+    }
+
+    /**
+     * Returns the value which the percentage of the values are not larger than.
+     * It's the upper bound of its bucket, but never larger than the max.
+     *
+     * @param percentile in [0, 100]
+     * @return {@code 0} if empty
+     */
+    long getValueAtPercentile(double percentile) {
+        if (mCount == 0) {
+            return 0;
+        }
+        final double p = Math.min(Math.max(percentile, 0.0), 100.0);
+        final long rank = Math.max(1, (long) Math.ceil(p / 100.0 * mCount));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mCounts[i];
+            if (seen >= rank) {
+                return Math.max(getMin(), Math.min(getUpperBound(i), mMax));
+            }
+        }
+        return mMax;
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mCounts[i] = 0;
+        }
+        mCount = 0;
+        mSum = 0;
+        mMin = Long.MAX_VALUE;
+        mMax = 0;
+    }
+
+    Histogram copy() {
+        final Histogram histogram = new Histogram();
+        System.arraycopy(mCounts, 0, histogram.mCounts, 0, BUCKET_COUNT);
+        histogram.mCount = mCount;
+        histogram.mSum = mSum;
+        histogram.mMin = mMin;
+        histogram.mMax = mMax;
+        return histogram;
+    }
+}
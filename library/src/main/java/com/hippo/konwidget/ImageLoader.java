@@ -0,0 +1,733 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.konwidget;
+
+/*
+ * Created by Hippo on 10/18/2016.
+ */
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.PorterDuff;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.provider.MediaStore;
+import android.support.annotation.DrawableRes;
+import android.support.annotation.Nullable;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads images for {@link AdvImageView} off the UI thread.
+ */
+public final class ImageLoader {
+    private ImageLoader() {}
+
+    private static final String LOG_TAG = ImageLoader.class.getSimpleName();
+
+    private static final int CORE_POOL_SIZE = 2;
+    private static final int MAXIMUM_POOL_SIZE = Math.max(CORE_POOL_SIZE,
+            Runtime.getRuntime().availableProcessors());
+    private static final int KEEP_ALIVE_SECONDS = 30;
+
+    private static final ThreadFactory sThreadFactory = new ThreadFactory() {
+        private final AtomicInteger mCount = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, "ImageLoader #" + mCount.getAndIncrement());
+        }
+    };
+
+    private static final Executor sExecutor;
+    static {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                MAXIMUM_POOL_SIZE, MAXIMUM_POOL_SIZE, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), sThreadFactory);
+        executor.allowCoreThreadTimeOut(true);
+        sExecutor = executor;
+    }
+
+    // Prefetches run one by one at the lowest priority, behind visible images
+    private static final ThreadPoolExecutor sPrefetchExecutor;
+    static {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        return new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+                                r.run();
+                            }
+                        }, "ImageLoader prefetch");
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        sPrefetchExecutor = executor;
+    }
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Receives the result of a load on the UI thread.
+     */
+    interface Callback {
+        /**
+         * @param request the request which is finished
+         * @param drawable the drawable, {@code null} if failed
+         */
+        void onLoaded(Request request, @Nullable Drawable drawable);
+
+        /**
+         * Called before {@link #onLoaded(Request, Drawable)} in progressive loads,
+         * with a low-resolution drawable of the same intrinsic size.
+         *
+         * @param request the request which is still loading
+         * @param drawable the preview
+         */
+        void onPreview(Request request, Drawable drawable);
+
+        /**
+         * Called first in loads which probe the size, with the size of the image
+         * read from its header, as it's shown. Not called if the image is in
+         * any cache, or the header can't be read.
+         *
+         * @param request the request which is still loading
+         */
+        void onSizeProbed(Request request, int width, int height);
+    }
+
+    /**
+     * An in-flight load. Once cancelled, the callback won't be called.
+     */
+    static final class Request implements Runnable {
+        private final Context mContext;
+        @DrawableRes
+        private final int mResId;
+        private final Uri mUri;
+        private final DecodeOptions mOptions;
+        private final boolean mProgressive;
+        private final boolean mProbe;
+        private final LoadMetrics mMetrics = new LoadMetrics();
+        private volatile Callback mCallback;
+
+        private Request(Context context, @DrawableRes int resId, Uri uri,
+                DecodeOptions options, boolean progressive, boolean probe, Callback callback) {
+            mContext = context;
+            mResId = resId;
+            mUri = uri;
+            mOptions = options;
+            mProgressive = progressive;
+            mProbe = probe;
+            mCallback = callback;
+        }
+
+        /**
+         * Stops delivering the result. The decoding itself
+         * is skipped if it hasn't started yet.
+         */
+        public void cancel() {
+            mCallback = null;
+        }
+
+        public boolean isCancelled() {
+            return mCallback == null;
+        }
+
+        /**
+         * Returns what the load costs. Only valid in
+         * {@link Callback#onLoaded(Request, Drawable)}.
+         */
+        LoadMetrics getMetrics() {
+            return mMetrics;
+        }
+
+        @Override
+        public void run() {
+            if (isCancelled()) {
+                return;
+            }
+
+            final Drawable drawable;
+            if (mResId != 0) {
+                final long start = System.nanoTime();
+                drawable = DrawableDecoder.decodeResource(mContext, mResId);
+                mMetrics.decodeNanos = System.nanoTime() - start;
+            } else {
+                drawable = decodeUri(mContext, mUri, mOptions, mMetrics,
+                        mProgressive || mProbe ? this : null);
+            }
+
+            sMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    final Callback callback = mCallback;
+                    if (callback != null) {
+                        mCallback = null;
+                        callback.onLoaded(Request.this, drawable);
+                    } else {
+                        release(drawable);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Probes the size and decodes the preview, if the request wants them,
+     * and delivers them. Called by
+     * {@link #decodeUri(Context, Uri, DecodeOptions, LoadMetrics, Request)}
+     * only if the image isn't in any cache.
+     *
+     * @return {@code false} if the request has been cancelled meanwhile
+     */
+    private static boolean deliverEarly(final Request request) {
+        if (request.mProbe) {
+            final long size = probeSize(request.mContext, request.mUri);
+            if (size != 0) {
+                sMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        final Callback callback = request.mCallback;
+                        if (callback != null) {
+                            callback.onSizeProbed(request,
+                                    ImageSizing.unpackWidth(size), ImageSizing.unpackHeight(size));
+                        }
+                    }
+                });
+            }
+            if (request.isCancelled()) {
+                return false;
+            }
+        }
+
+        if (!request.mProgressive) {
+            return true;
+        }
+        final Drawable preview = DrawableDecoder.decodePreview(
+                request.mContext, request.mUri, request.mOptions);
+        if (preview != null) {
+            sMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    final Callback callback = request.mCallback;
+                    if (callback != null) {
+                        callback.onPreview(request, preview);
+                    } else {
+                        release(preview);
+                    }
+                }
+            });
+        }
+        return !request.isCancelled();
+    }
+
+    /**
+     * Tells that the drawable loaded by this class will never be drawn,
+     * so its bitmap could be reused.
+     */
+    static void release(@Nullable Drawable drawable) {
+        if (drawable instanceof DecodedBitmapDrawable) {
+            ((DecodedBitmapDrawable) drawable).release();
+        } else if (drawable instanceof TiledDrawable) {
+            ((TiledDrawable) drawable).recycle();
+        }
+    }
+
+    /**
+     * Runs the task on the background executor.
+     */
+    static void execute(Runnable task) {
+        sExecutor.execute(task);
+    }
+
+    /**
+     * Runs the task on the UI thread.
+     */
+    static void post(Runnable task) {
+        sMainHandler.post(task);
+    }
+
+    private static final String DISK_KEY_VERSION = "2#";
+    private static final String[] SOURCE_VERSION_PROJECTION = {
+            MediaStore.MediaColumns.DATE_MODIFIED,
+            MediaStore.MediaColumns.SIZE,
+    };
+
+    private static volatile DiskCache sDiskCache;
+
+    /**
+     * Sets the disk cache for downscaled images of content and file Uris.
+     * Only images decoded with {@link AdvImageView#DECODE_MODE_SAMPLE} or
+     * {@link AdvImageView#DECODE_MODE_EXACT} are stored, per target size.
+     * It's only used off the UI thread, by async loads and prefetches.
+     *
+     * @param diskCache the disk cache, {@code null} to disable it
+     */
+    public static void setDiskCache(@Nullable DiskCache diskCache) {
+        sDiskCache = diskCache;
+    }
+
+    /**
+     * Returns the disk cache.
+     *
+     * @see #setDiskCache(DiskCache)
+     */
+    @Nullable
+    public static DiskCache getDiskCache() {
+        return sDiskCache;
+    }
+
+    /**
+     * Returns the key in the disk cache. The prefix is bumped when
+     * decoded images change, so old files are never read.
+     * Version 2 applies EXIF orientation.
+     * The version of the source is a part of it, so an image
+     * overwritten at the same Uri isn't served from old files.
+     */
+    private static String getDiskKey(Context context, Uri uri, String key) {
+        return Utils.md5(DISK_KEY_VERSION + key + '#' + getSourceVersion(context, uri));
+    }
+
+    /**
+     * Returns the modified time and the length of the source of the Uri,
+     * from the file, or the MediaStore columns of the content.
+     *
+     * @return an empty string if unknown
+     */
+    private static String getSourceVersion(Context context, Uri uri) {
+        if (ContentResolver.SCHEME_FILE.equals(uri.getScheme())) {
+            final File file = new File(uri.getPath());
+            return Long.toString(file.lastModified()) + '#' + file.length();
+        }
+
+        Cursor cursor = null;
+        try {
+            cursor = context.getContentResolver().query(uri, SOURCE_VERSION_PROJECTION,
+                    null, null, null);
+            if (cursor != null && cursor.moveToFirst()) {
+                final int modifiedIndex = cursor.getColumnIndex(MediaStore.MediaColumns.DATE_MODIFIED);
+                final int sizeIndex = cursor.getColumnIndex(MediaStore.MediaColumns.SIZE);
+                return (modifiedIndex != -1 ? cursor.getString(modifiedIndex) : "")
+                        + '#' + (sizeIndex != -1 ? cursor.getString(sizeIndex) : "");
+            }
+        } catch (Exception e) {
+            // Not every provider has these columns
+            Log.w(LOG_TAG, "Unable to query source version: " + uri, e);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return "";
+    }
+
+    private static boolean isCacheable(Uri uri) {
+        // Resources are cached by the framework
+        return !ContentResolver.SCHEME_ANDROID_RESOURCE.equals(uri.getScheme());
+    }
+
+    private static boolean isDiskCacheable(Uri uri, @Nullable DecodeOptions options) {
+        final String scheme = uri.getScheme();
+        return options != null && options.decodeMode != AdvImageView.DECODE_MODE_FULL
+                && options.decodeMode != AdvImageView.DECODE_MODE_TILED
+                && (ContentResolver.SCHEME_CONTENT.equals(scheme)
+                || ContentResolver.SCHEME_FILE.equals(scheme));
+    }
+
+    /**
+     * Returns the drawable of the Uri from {@link BitmapCache}.
+     *
+     * @return {@code null} if it isn't cached
+     */
+    @Nullable
+    static Drawable getCached(Context context, Uri uri, @Nullable DecodeOptions options) {
+        if (!isCacheable(uri)) {
+            return null;
+        }
+        return getCached(context, BitmapCache.getKey(uri, options));
+    }
+
+    @Nullable
+    private static Drawable getCached(Context context, String key) {
+        final DecodedBitmap decodedBitmap = BitmapCache.getInstance().get(key);
+        if (decodedBitmap == null) {
+            return null;
+        }
+        // It may have just been evicted and gone to the pool
+        return DecodedBitmapDrawable.obtain(context.getResources(), decodedBitmap);
+    }
+
+    @Nullable
+    private static Drawable readDiskCache(Context context, DiskCache diskCache, String diskKey,
+            DecodeOptions options, @Nullable LoadMetrics metrics, long start) {
+        final File file;
+        try {
+            file = diskCache.get(diskKey);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Unable to read disk cache", e);
+            return null;
+        }
+        if (file == null) {
+            return null;
+        }
+
+        if (metrics != null) {
+            metrics.resolveNanos = System.nanoTime() - start;
+        }
+        return DrawableDecoder.decodeCacheFile(context, file, options);
+    }
+
+    private static void writeDiskCache(DiskCache diskCache, String diskKey,
+            DecodedBitmapDrawable drawable) {
+        final DecodedBitmap decodedBitmap = drawable.getDecodedBitmap();
+        final Bitmap bitmap = decodedBitmap.bitmap;
+        if (bitmap.getWidth() >= decodedBitmap.width && bitmap.getHeight() >= decodedBitmap.height) {
+            // Not downscaled, decoding the source is as cheap
+            return;
+        }
+
+        try {
+            final File file = diskCache.beginEdit(diskKey);
+            if (file != null) {
+                diskCache.commitEdit(diskKey, DrawableDecoder.encodeCacheFile(decodedBitmap.bitmap,
+                        decodedBitmap.width, decodedBitmap.height, file));
+            }
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Unable to write disk cache", e);
+        }
+    }
+
+    /**
+     * Decodes the drawable of the Uri, looks up {@link BitmapCache} and
+     * the disk cache first and puts decoded bitmaps into them.
+     *
+     * @return {@code null} if the Uri can't be decoded
+     */
+    @Nullable
+    static Drawable decodeUri(Context context, Uri uri, @Nullable DecodeOptions options) {
+        return decodeUri(context, uri, options, null);
+    }
+
+    /**
+     * Decodes as {@link #decodeUri(Context, Uri, DecodeOptions)},
+     * and fills what it costs into the metrics.
+     */
+    @Nullable
+    static Drawable decodeUri(Context context, Uri uri, @Nullable DecodeOptions options,
+            @Nullable LoadMetrics metrics) {
+        return decodeUri(context, uri, options, metrics, null);
+    }
+
+    /**
+     * Decodes as {@link #decodeUri(Context, Uri, DecodeOptions, LoadMetrics)}.
+     * If the image isn't in any cache, the probed size and the preview of
+     * the request are delivered before decoding the source, so the caches
+     * are looked up once.
+     *
+     * @return {@code null} if the request is cancelled meanwhile
+     */
+    @Nullable
+    private static Drawable decodeUri(Context context, Uri uri, @Nullable DecodeOptions options,
+            @Nullable LoadMetrics metrics, @Nullable Request request) {
+        final long start = metrics != null ? System.nanoTime() : 0;
+        if (metrics != null) {
+            metrics.reset();
+        }
+
+        if (!isCacheable(uri)) {
+            final Drawable drawable = decodeSource(context, uri, options);
+            if (metrics != null) {
+                metrics.decodeNanos = System.nanoTime() - start;
+                metrics.decodedBytes = LoadMetrics.getByteCount(drawable);
+            }
+            return drawable;
+        }
+
+        final String key = BitmapCache.getKey(uri, options);
+        final Drawable cached = getCached(context, key);
+        if (cached != null) {
+            if (metrics != null) {
+                metrics.resolveNanos = System.nanoTime() - start;
+            }
+            return cached;
+        }
+
+        // The disk cache and the query of the source version are I/O,
+        // skip them in sync mode on the UI thread
+        final DiskCache diskCache = isDiskCacheable(uri, options)
+                && Looper.myLooper() != Looper.getMainLooper() ? sDiskCache : null;
+        final String diskKey = diskCache != null ? getDiskKey(context, uri, key) : null;
+        Drawable drawable = null;
+        if (diskCache != null) {
+            drawable = readDiskCache(context, diskCache, diskKey, options, metrics, start);
+        }
+        if (drawable == null) {
+            if (metrics != null) {
+                metrics.resolveNanos = System.nanoTime() - start;
+            }
+            if (request != null && !deliverEarly(request)) {
+                return null;
+            }
+            drawable = decodeSource(context, uri, options);
+            if (diskCache != null && drawable instanceof DecodedBitmapDrawable) {
+                writeDiskCache(diskCache, diskKey, (DecodedBitmapDrawable) drawable);
+            }
+        }
+        if (metrics != null) {
+            metrics.decodeNanos = System.nanoTime() - start - metrics.resolveNanos;
+            metrics.decodedBytes = LoadMetrics.getByteCount(drawable);
+        }
+
+        if (drawable != null && drawable.getClass() == BitmapDrawable.class) {
+            // A full image, wrap it to share it
+            final Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
+            if (bitmap != null) {
+                drawable = DrawableDecoder.newDrawable(context, bitmap,
+                        drawable.getIntrinsicWidth(), drawable.getIntrinsicHeight());
+            }
+        }
+        if (drawable instanceof DecodedBitmapDrawable) {
+            BitmapCache.getInstance().put(key, ((DecodedBitmapDrawable) drawable).getDecodedBitmap());
+        }
+        return drawable;
+    }
+
+    private static final int PROBED_SIZE_CACHE_SIZE = 512;
+    private static final LruCache<String, Long> sProbedSizes =
+            new LruCache<String, Long>(PROBED_SIZE_CACHE_SIZE);
+
+    /**
+     * Returns the size of the image of the Uri probed before, without I/O,
+     * so it could be called on the UI thread.
+     *
+     * @return the width and height packed by {@link ImageSizing#pack(int, int)},
+     * or {@code 0} if it hasn't been probed
+     */
+    static long getProbedSize(Uri uri) {
+        final Long cached = sProbedSizes.get(uri.toString());
+        return cached != null ? cached : 0;
+    }
+
+    /**
+     * Reads the size of the image of the Uri from its header, without
+     * decoding pixels. Sizes are cached, android.resource Uris are skipped.
+     * It reads the file, so it must not be called on the UI thread.
+     *
+     * @return the width and height packed by {@link ImageSizing#pack(int, int)},
+     * or {@code 0} if unknown
+     */
+    private static long probeSize(Context context, Uri uri) {
+        if (!isCacheable(uri)) {
+            return 0;
+        }
+        final String key = uri.toString();
+        final Long cached = sProbedSizes.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        ImageMetrics.beginSection("ImageLoader#probe");
+        final long size;
+        try {
+            size = DrawableDecoder.probeSize(context, uri);
+        } finally {
+            ImageMetrics.endSection();
+        }
+        if (size != 0) {
+            sProbedSizes.put(key, size);
+        }
+        return size;
+    }
+
+    @Nullable
+    private static Drawable decodeSource(Context context, Uri uri, @Nullable DecodeOptions options) {
+        ImageMetrics.beginSection("ImageLoader#decode");
+        try {
+            return DrawableDecoder.decodeUri(context, uri, options);
+        } finally {
+            ImageMetrics.endSection();
+        }
+    }
+
+    private static final class PrefetchTask implements Runnable {
+        private final Context mContext;
+        @DrawableRes
+        private final int mResId;
+        private final Uri mUri;
+        private final DecodeOptions mOptions;
+
+        private PrefetchTask(Context context, @DrawableRes int resId, Uri uri,
+                DecodeOptions options) {
+            mContext = context;
+            mResId = resId;
+            mUri = uri;
+            mOptions = options;
+        }
+
+        @Override
+        public void run() {
+            if (mResId != 0) {
+                // Fills DrawableCache
+                DrawableDecoder.decodeResource(mContext, mResId);
+            } else {
+                // It looks up BitmapCache first, then loads from the disk cache
+                // or the source, and the bitmap stays in BitmapCache
+                release(decodeUri(mContext, mUri, mOptions));
+            }
+        }
+    }
+
+    /**
+     * Decodes the images of the Uris into {@link BitmapCache} and the disk cache
+     * in background at low priority, so {@link AdvImageView#setImageURI(Uri)}
+     * finds them ready. The arguments must be what the view will decode with,
+     * the target size is the size of the view without padding.
+     * android.resource Uris and {@link AdvImageView#DECODE_MODE_TILED} are skipped.
+     * <p>
+     * It only warms views which don't bake a tint, see
+     * {@link #prefetch(Context, List, int, int, int, int, PorterDuff.Mode, int)}
+     * for views with {@link AdvImageView#setBakeTint(boolean)}.
+     *
+     * @param targetWidth the width of the view without padding
+     * @param targetHeight the height of the view without padding
+     * @param scaleType the scale type of the view
+     * @param decodeMode the decode mode of the view
+     *
+     * @see #cancelPrefetch()
+     */
+    public static void prefetch(Context context, List<Uri> uris, int targetWidth, int targetHeight,
+            @AdvImageView.ScaleType int scaleType, @AdvImageView.DecodeMode int decodeMode) {
+        prefetch(context, uris, targetWidth, targetHeight, scaleType, decodeMode, null, 0);
+    }
+
+    /**
+     * Prefetches the images of the Uris for views which bake a tint or
+     * a color filter into the bitmaps, as
+     * {@link #prefetch(Context, List, int, int, int, int)} does.
+     * The color and the mode must be what the view bakes: the color filter set by
+     * {@link AdvImageView#setColorFilter(int, PorterDuff.Mode)}, or else the default
+     * color of a tint which isn't stateful and the tint mode, SRC_IN by default.
+     *
+     * @param bakeMode the mode to bake, {@code null} for none
+     * @param bakeColor the color to bake
+     */
+    public static void prefetch(Context context, List<Uri> uris, int targetWidth, int targetHeight,
+            @AdvImageView.ScaleType int scaleType, @AdvImageView.DecodeMode int decodeMode,
+            @Nullable PorterDuff.Mode bakeMode, int bakeColor) {
+        if (decodeMode == AdvImageView.DECODE_MODE_TILED) {
+            return;
+        }
+        final DecodeOptions options;
+        if (decodeMode == AdvImageView.DECODE_MODE_FULL) {
+            options = bakeMode != null ? new DecodeOptions(0, 0, scaleType,
+                    AdvImageView.DECODE_MODE_FULL, bakeMode, bakeColor) : null;
+        } else {
+            options = new DecodeOptions(targetWidth, targetHeight, scaleType, decodeMode,
+                    bakeMode, bakeColor);
+        }
+        for (Uri uri : uris) {
+            if (uri != null && isCacheable(uri)) {
+                sPrefetchExecutor.execute(new PrefetchTask(context, 0, uri, options));
+            }
+        }
+    }
+
+    /**
+     * Prefetches the image of the Uri.
+     *
+     * @see #prefetch(Context, List, int, int, int, int)
+     */
+    public static void prefetch(Context context, Uri uri, int targetWidth, int targetHeight,
+            @AdvImageView.ScaleType int scaleType, @AdvImageView.DecodeMode int decodeMode) {
+        prefetch(context, Collections.singletonList(uri),
+                targetWidth, targetHeight, scaleType, decodeMode);
+    }
+
+    /**
+     * Loads the drawable resources in background at low priority,
+     * so {@link AdvImageView#setImageResource(int)} only creates
+     * a drawable from the cached state. The context must have the theme
+     * of the views.
+     *
+     * @see #cancelPrefetch()
+     */
+    public static void prefetch(Context context, @DrawableRes int... resIds) {
+        for (int resId : resIds) {
+            if (resId != 0) {
+                sPrefetchExecutor.execute(new PrefetchTask(context, resId, null, null));
+            }
+        }
+    }
+
+    /**
+     * Drops the prefetches which haven't started, for example when
+     * the list is scrolled the other way or destroyed.
+     */
+    public static void cancelPrefetch() {
+        sPrefetchExecutor.getQueue().clear();
+    }
+
+    /**
+     * Loads a drawable resource in background.
+     */
+    static Request load(Context context, @DrawableRes int resId, Callback callback) {
+        final Request request = new Request(context, resId, null, null, false, false, callback);
+        sExecutor.execute(request);
+        return request;
+    }
+
+    /**
+     * Loads a drawable from the Uri in background.
+     *
+     * @param options how to downscale the image, {@code null} for the full image
+     * @param progressive whether to deliver a low-resolution preview first
+     * @param probe whether to deliver the size read from the header first
+     */
+    static Request load(Context context, Uri uri, @Nullable DecodeOptions options,
+            boolean progressive, boolean probe, Callback callback) {
+        final Request request = new Request(context, 0, uri, options, progressive, probe, callback);
+        sExecutor.execute(request);
+        return request;
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.konwidget;
+
+/*
+ * Created by Hippo on 10/18/2016.
+ */
+
+import android.support.annotation.IntDef;
+import android.support.annotation.Nullable;
+import android.support.v4.os.TraceCompat;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Reports what {@link AdvImageView}s cost. Metrics go to the listener of
+ * the view, the global listeners and, if aggregating, to the percentiles
+ * of {@link #getSnapshot()}. Sections could be traced by
+ * {@link android.os.Trace} for systrace.
+ * <p>
+ * Nothing is timed while no view listener, global listener, aggregation
+ * or tracing is on.
+ */
+public final class ImageMetrics {
+    private ImageMetrics() {}
+
+    @IntDef({METRIC_RESOLVE_TIME, METRIC_DECODE_TIME, METRIC_DECODED_BYTES,
+            METRIC_MEASURE_TIME, METRIC_CONFIGURE_BOUNDS_TIME, METRIC_DRAW_TIME,
+            METRIC_REQUEST_LAYOUT, METRIC_INVALIDATE})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Metric {}
+
+    /**
+     * Nanoseconds looking up the image in the memory and disk caches, per load.
+     */
+    public static final int METRIC_RESOLVE_TIME = 0;
+    /**
+     * Nanoseconds decoding the image, per load which isn't found in memory.
+     */
+    public static final int METRIC_DECODE_TIME = 1;
+    /**
+     * Bytes of the decoded bitmap, per load which isn't found in memory.
+     */
+    public static final int METRIC_DECODED_BYTES = 2;
+    /**
+     * Nanoseconds in {@link AdvImageView#onMeasure(int, int)}.
+     */
+    public static final int METRIC_MEASURE_TIME = 3;
+    /**
+     * Nanoseconds computing the bounds and the matrix of the image.
+     */
+    public static final int METRIC_CONFIGURE_BOUNDS_TIME = 4;
+    /**
+     * Nanoseconds in {@link AdvImageView#onDraw(android.graphics.Canvas)}.
+     */
+    public static final int METRIC_DRAW_TIME = 5;
+    /**
+     * {@code 1} per {@link AdvImageView#requestLayout()}.
+     */
+    public static final int METRIC_REQUEST_LAYOUT = 6;
+    /**
+     * {@code 1} per {@link AdvImageView#invalidate()}.
+     */
+    public static final int METRIC_INVALIDATE = 7;
+
+    private static final int METRIC_COUNT = 8;
+
+    /**
+     * Receives metrics on the UI thread. Keep it fast, it's called
+     * in measuring and drawing.
+     */
+    public interface Listener {
+        /**
+         * @param view the view it's measured in
+         * @param metric what is measured
+         * @param value nanoseconds, bytes or {@code 1} for counts
+         */
+        void onMetric(AdvImageView view, @Metric int metric, long value);
+    }
+
+    private static final CopyOnWriteArrayList<Listener> sListeners =
+            new CopyOnWriteArrayList<Listener>();
+    private static volatile boolean sTracing;
+    private static volatile boolean sAggregating;
+    private static volatile boolean sActive;
+
+    // Guarded by the class
+    private static final Histogram[] sHistograms = new Histogram[METRIC_COUNT];
+
+    private static void updateActive() {
+        sActive = sTracing || sAggregating || !sListeners.isEmpty();
+    }
+
+    /**
+     * Returns whether metrics are wanted even if the view has no listener.
+     */
+    static boolean isActive() {
+        return sActive;
+    }
+
+    /**
+     * Adds a listener for metrics of all views.
+     */
+    public static void addListener(Listener listener) {
+        sListeners.addIfAbsent(listener);
+        updateActive();
+    }
+
+    public static void removeListener(Listener listener) {
+        sListeners.remove(listener);
+        updateActive();
+    }
+
+    /**
+     * Set whether to trace measuring, laying out, drawing and decoding
+     * in {@link android.os.Trace} sections. It only works on API 18+.
+     */
+    public static void setTracing(boolean tracing) {
+        sTracing = tracing;
+        updateActive();
+    }
+
+    /**
+     * Set whether to aggregate metrics of all views for {@link #getSnapshot()}.
+     * The aggregated metrics are kept when it's turned off.
+     */
+    public static void setAggregating(boolean aggregating) {
+        sAggregating = aggregating;
+        updateActive();
+    }
+
+    /**
+     * Returns a copy of the aggregated metrics.
+     *
+     * @see #setAggregating(boolean)
+     */
+    public static synchronized Snapshot getSnapshot() {
+        final Histogram[] histograms = new Histogram[METRIC_COUNT];
+        for (int i = 0; i < METRIC_COUNT; i++) {
+            histograms[i] = sHistograms[i] != null ? sHistograms[i].copy() : null;
+        }
+        return new Snapshot(histograms);
+    }
+
+    /**
+     * Drops the aggregated metrics.
+     */
+    public static synchronized void reset() {
+        for (Histogram histogram : sHistograms) {
+            if (histogram != null) {
+                histogram.reset();
+            }
+        }
+    }
+
+    static void beginSection(String sectionName) {
+        if (sTracing) {
+            TraceCompat.beginSection(sectionName);
+        }
+    }
+
+    static void endSection() {
+        if (sTracing) {
+            TraceCompat.endSection();
+        }
+    }
+
+    static void report(AdvImageView view, @Nullable Listener viewListener,
+            @Metric int metric, long value) {
+        if (viewListener != null) {
+            viewListener.onMetric(view, metric, value);
+        }
+        for (Listener listener : sListeners) {
+            listener.onMetric(view, metric, value);
+        }
+        if (sAggregating) {
+            aggregate(metric, value);
+        }
+    }
+
+    private static synchronized void aggregate(int metric, long value) {
+        Histogram histogram = sHistograms[metric];
+        if (histogram == null) {
+            histogram = new Histogram();
+            sHistograms[metric] = histogram;
+        }
+        histogram.record(value);
+    }
+
+    /**
+     * Aggregated metrics at a moment.
+     */
+    public static final class Snapshot {
+
+        private final Histogram[] mHistograms;
+
+        private Snapshot(Histogram[] histograms) {
+            mHistograms = histograms;
+        }
+
+        /**
+         * Returns how many times the metric is reported.
+         */
+        public long getCount(@Metric int metric) {
+            final Histogram histogram = mHistograms[metric];
+            return histogram != null ? histogram.getCount() : 0;
+        }
+
+        /**
+         * Returns the sum of the values of the metric.
+         */
+        public long getSum(@Metric int metric) {
+            final Histogram histogram = mHistograms[metric];
+            return histogram != null ? histogram.getSum() : 0;
+        }
+
+        public long getMax(@Metric int metric) {
+            final Histogram histogram = mHistograms[metric];
+            return histogram != null ? histogram.getMax() : 0;
+        }
+
+        /**
+         * Returns the value which the percentage of the values of the metric
+         * are not larger than, within about 6%.
+         *
+         * @param percentile in [0, 100], for example 50, 90 or 99
+         * @return {@code 0} if it's never reported
+         */
+        public long getPercentile(@Metric int metric, double percentile) {
+            final Histogram histogram = mHistograms[metric];
+            return histogram != null ? histogram.getValueAtPercentile(percentile) : 0;
+        }
+    }
+}
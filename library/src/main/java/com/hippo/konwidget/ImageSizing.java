@@ -0,0 +1,469 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.konwidget;
+
+/*
+ * Created by Hippo on 10/18/2016.
+ */
+
+/**
+ * The measuring and scale type math of {@link AdvImageView}, on primitives
+ * only. The view delegates to it, and it gives the same results anywhere:
+ * on background threads, for example to compute the sizes of list items
+ * before inflating them, or in unit tests on the JVM.
+ * <p>
+ * It's stateless and thread-safe. Measure specs and measured states
+ * have the same bits as {@link android.view.View.MeasureSpec} and
+ * {@link android.view.View#MEASURED_STATE_TOO_SMALL}.
+ */
+public final class ImageSizing {
+    private ImageSizing() {}
+
+    public static final int SCALE_TYPE_MATRIX = 0;
+    public static final int SCALE_TYPE_FIT_XY = 1;
+    public static final int SCALE_TYPE_FIT_START = 2;
+    public static final int SCALE_TYPE_FIT_CENTER = 3;
+    public static final int SCALE_TYPE_FIT_END = 4;
+    public static final int SCALE_TYPE_CENTER = 5;
+    public static final int SCALE_TYPE_CENTER_CROP = 6;
+    public static final int SCALE_TYPE_CENTER_INSIDE = 7;
+
+    public static final float INVALID_ASPECT_RATIO = -1.0f;
+    public static final float ASPECT_RATIO_OF_DRAWABLE = 0.0f;
+
+    private static final int MODE_SHIFT = 30;
+    private static final int MODE_MASK  = 0x3 << MODE_SHIFT;
+    // Modes of measure specs
+    public static final int UNSPECIFIED = 0;
+    public static final int EXACTLY = 1 << MODE_SHIFT;
+    public static final int AT_MOST = 2 << MODE_SHIFT;
+
+    public static final int MEASURED_SIZE_MASK = 0x00ffffff;
+    public static final int MEASURED_STATE_MASK = 0xff000000;
+    public static final int MEASURED_STATE_TOO_SMALL = 0x01000000;
+
+    /**
+     * The content fills the view, no matrix.
+     */
+    public static final int TRANSFORM_FILL = 0;
+    /**
+     * The content is drawn at its size, no matrix.
+     */
+    public static final int TRANSFORM_NONE = 1;
+    /**
+     * The content is drawn at its size, with the matrix of
+     * {@link #SCALE_TYPE_MATRIX}.
+     */
+    public static final int TRANSFORM_MATRIX = 2;
+    /**
+     * The content is drawn at its size, scaled then translated.
+     */
+    public static final int TRANSFORM_SCALE_TRANSLATE = 3;
+
+    /**
+     * Creates a measure spec as {@link android.view.View.MeasureSpec#makeMeasureSpec(int, int)}.
+     *
+     * @param mode one of {@link #UNSPECIFIED}, {@link #EXACTLY} and {@link #AT_MOST}
+     */
+    public static int makeMeasureSpec(int size, int mode) {
+        return (size & ~MODE_MASK) | (mode & MODE_MASK);
+    }
+
+    public static int getMode(int measureSpec) {
+        return measureSpec & MODE_MASK;
+    }
+
+    public static int getSize(int measureSpec) {
+        return measureSpec & ~MODE_MASK;
+    }
+
+    /**
+     * Packs the measured width and height, with states, into a long.
+     */
+    public static long pack(int width, int height) {
+        return ((long) width << 32) | (height & 0xffffffffL);
+    }
+
+    public static int unpackWidth(long packed) {
+        return (int) (packed >>> 32);
+    }
+
+    public static int unpackHeight(long packed) {
+        return (int) packed;
+    }
+
+    /**
+     * Measures as {@link AdvImageView#onMeasure(int, int)}. To get the size of
+     * an item of a list before it's inflated, pass the specs its parent will
+     * measure it with, and the attributes and image size it will have.
+     *
+     * @param hasContent whether the view has an image
+     * @param contentWidth the intrinsic width of the image
+     * @param contentHeight the intrinsic height of the image
+     * @param aspectRatio the aspect ratio of the view without padding,
+     *                    or {@link #ASPECT_RATIO_OF_DRAWABLE}, or {@link #INVALID_ASPECT_RATIO}
+     * @param suggestedMinimumWidth the min width of the view, usually the width of the background
+     * @param suggestedMinimumHeight the min height of the view, usually the height of the background
+     * @return the measured width and height with states,
+     * see {@link #unpackWidth(long)} and {@link #unpackHeight(long)}
+     */
+    public static long measure(int widthMeasureSpec, int heightMeasureSpec,
+            boolean hasContent, int contentWidth, int contentHeight, float aspectRatio,
+            int minWidth, int maxWidth, int minHeight, int maxHeight,
+            int paddingLeft, int paddingTop, int paddingRight, int paddingBottom,
+            int suggestedMinimumWidth, int suggestedMinimumHeight) {
+        int w;
+        int h;
+
+        // Desired aspect ratio of the view's contents (not including padding)
+        float desiredAspect = INVALID_ASPECT_RATIO;
+
+        // We are allowed to change the view's width
+        boolean resizeWidth = false;
+
+        // We are allowed to change the view's height
+        boolean resizeHeight = false;
+
+        final int widthSpecMode = getMode(widthMeasureSpec);
+        final int heightSpecMode = getMode(heightMeasureSpec);
+
+        if (!hasContent) {
+            // If no drawable, its intrinsic size is 0.
+            w = h = 0;
+
+            // We are supposed to adjust view bounds to match the aspect
+            // ratio. See if that is possible.
+            if (aspectRatio > ASPECT_RATIO_OF_DRAWABLE) {
+                resizeWidth = widthSpecMode != EXACTLY;
+                resizeHeight = heightSpecMode != EXACTLY;
+                desiredAspect = aspectRatio;
+            }
+        } else {
+            w = contentWidth;
+            h = contentHeight;
+            if (w <= 0) w = 1;
+            if (h <= 0) h = 1;
+
+            // We are supposed to adjust view bounds to match the aspect
+            // ratio. See if that is possible.
+            if (aspectRatio >= ASPECT_RATIO_OF_DRAWABLE) {
+                resizeWidth = widthSpecMode != EXACTLY;
+                resizeHeight = heightSpecMode != EXACTLY;
+                desiredAspect = aspectRatio > ASPECT_RATIO_OF_DRAWABLE ? aspectRatio : (float) w / (float) h;
+            }
+        }
+
+        final int pLeft = paddingLeft;
+        final int pRight = paddingRight;
+        final int pTop = paddingTop;
+        final int pBottom = paddingBottom;
+
+        int widthSize;
+        int heightSize;
+
+        if (resizeWidth || resizeHeight) {
+            /* If we get here, it means we want to resize to match the
+                drawables aspect ratio, and we have the freedom to change at
+                least one dimension.
+            */
+
+            // Get the max possible width given our constraints
+            widthSize = resolveAdjustedSize(w + pLeft + pRight, minWidth, maxWidth, widthMeasureSpec);
+
+            // Get the max possible height given our constraints
+            heightSize = resolveAdjustedSize(h + pTop + pBottom, minHeight, maxHeight, heightMeasureSpec);
+
+            if (desiredAspect != INVALID_ASPECT_RATIO) {
+                // See what our actual aspect ratio is
+                final float actualAspect = (float)(widthSize - pLeft - pRight) /
+                        (heightSize - pTop - pBottom);
+
+                if (Math.abs(actualAspect - desiredAspect) > 0.0000001) {
+
+                    boolean done = false;
+
+                    // Try adjusting width to be proportional to height
+                    if (resizeWidth) {
+                        final int newWidth = (int)(desiredAspect * (heightSize - pTop - pBottom)) +
+                                pLeft + pRight;
+
+                        if (isSizeAcceptable(newWidth, minWidth, maxWidth, widthMeasureSpec)) {
+                            widthSize = newWidth;
+                            done = true;
+                        }
+                    }
+
+                    // Try adjusting height to be proportional to width
+                    if (!done && resizeHeight) {
+                        final int newHeight = (int)((widthSize - pLeft - pRight) / desiredAspect) +
+                                pTop + pBottom;
+
+                        if (isSizeAcceptable(newHeight, minHeight, maxHeight, heightMeasureSpec)) {
+                            heightSize = newHeight;
+                        }
+                    }
+                }
+            }
+        } else {
+            /* We are either don't want to preserve the drawables aspect ratio,
+               or we are not allowed to change view dimensions. Just measure in
+               the normal way.
+            */
+            w += pLeft + pRight;
+            h += pTop + pBottom;
+
+            w = Math.max(w, suggestedMinimumWidth);
+            h = Math.max(h, suggestedMinimumHeight);
+
+            widthSize = resolveSizeAndState(w, widthMeasureSpec, 0);
+            heightSize = resolveSizeAndState(h, heightMeasureSpec, 0);
+        }
+
+        return pack(widthSize, heightSize);
+    }
+
+    /**
+     * Returns the size closest to the desired size which the spec and
+     * the min and max size allow.
+     */
+    public static int resolveAdjustedSize(int desiredSize, int minSize,
+            int maxSize, int measureSpec) {
+        int result = desiredSize;
+        final int specMode = getMode(measureSpec);
+        final int specSize =  getSize(measureSpec);
+        switch (specMode) {
+            case UNSPECIFIED:
+                /* Parent says we can be as big as we want. Just don't be larger
+                   than max size imposed on ourselves.
+                */
+                result = Math.max(Math.min(desiredSize, maxSize), minSize);
+                break;
+            case AT_MOST:
+                // Parent says we can be as big as we want, up to specSize.
+                // Don't be larger than specSize, and don't be larger than
+                // the max size imposed on ourselves.
+                result = Math.max(Math.min(Math.min(desiredSize, specSize), maxSize), minSize);
+                break;
+            case EXACTLY:
+                // No choice. Do what we are told.
+                result = specSize;
+                break;
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether the spec and the min and max size allow the size.
+     */
+    public static boolean isSizeAcceptable(int size, int minSize, int maxSize, int measureSpec) {
+        final int specMode = getMode(measureSpec);
+        final int specSize =  getSize(measureSpec);
+        switch (specMode) {
+            case UNSPECIFIED:
+                // Parent says we can be as big as we want. Just don't be smaller
+                // than min size, and don't be larger than max size.
+                return size >= minSize && size <= maxSize;
+            case AT_MOST:
+                // Parent says we can be as big as we want, up to specSize.
+                // Don't be larger than specSize, and don't be smaller
+                // than min size, and don't be larger than max size.
+                return size <= specSize && size >= minSize && size <= maxSize;
+            case EXACTLY:
+                // No choice.
+                return size == specSize;
+            default:
+                // WTF? Return true to make you happy. (´・ω・`)
+                return true;
+        }
+    }
+
+    /**
+     * Same as {@link android.view.View#resolveSizeAndState(int, int, int)}.
+     */
+    public static int resolveSizeAndState(int size, int measureSpec, int childMeasuredState) {
+        final int specMode = getMode(measureSpec);
+        final int specSize = getSize(measureSpec);
+        final int result;
+        switch (specMode) {
+            case AT_MOST:
+                if (specSize < size) {
+                    result = specSize | MEASURED_STATE_TOO_SMALL;
+                } else {
+                    result = size;
+                }
+                break;
+            case EXACTLY:
+                result = specSize;
+                break;
+            case UNSPECIFIED:
+            default:
+                result = size;
+        }
+        return result | (childMeasuredState & MEASURED_STATE_MASK);
+    }
+
+    /**
+     * Computes how the content is drawn in the view without padding,
+     * as {@link android.widget.ImageView} does for the scale type.
+     *
+     * @param scaleType one of the {@code SCALE_TYPE_*} constants
+     * @param out at least 4 floats, receives scale x, scale y, translate x
+     *            and translate y for {@link #TRANSFORM_SCALE_TRANSLATE}
+     * @return one of {@link #TRANSFORM_FILL}, {@link #TRANSFORM_NONE},
+     * {@link #TRANSFORM_MATRIX} and {@link #TRANSFORM_SCALE_TRANSLATE}
+     */
+    public static int computeTransform(int contentWidth, int contentHeight,
+            int viewWidth, int viewHeight, int scaleType, float[] out) {
+        final int dWidth = contentWidth;
+        final int dHeight = contentHeight;
+        final int vWidth = viewWidth;
+        final int vHeight = viewHeight;
+
+        final boolean fits = (dWidth < 0 || vWidth == dWidth) &&
+                (dHeight < 0 || vHeight == dHeight);
+
+        if (dWidth <= 0 || dHeight <= 0 || scaleType == SCALE_TYPE_FIT_XY) {
+            /* If the drawable has no intrinsic size, or we're told to
+                scale to fit, then we just fill our entire view.
+            */
+            return TRANSFORM_FILL;
+        } else if (scaleType == SCALE_TYPE_MATRIX) {
+            // Use the specified matrix as-is.
+            return TRANSFORM_MATRIX;
+        } else if (fits) {
+            // The bitmap fits exactly, no transform needed.
+            return TRANSFORM_NONE;
+        } else if (scaleType == SCALE_TYPE_CENTER) {
+            // Center bitmap in view, no scaling.
+            out[0] = 1.0f;
+            out[1] = 1.0f;
+            out[2] = Math.round((vWidth - dWidth) * 0.5f);
+            out[3] = Math.round((vHeight - dHeight) * 0.5f);
+        } else if (scaleType == SCALE_TYPE_CENTER_CROP) {
+            final float scale;
+            float dx = 0, dy = 0;
+
+            if (dWidth * vHeight > vWidth * dHeight) {
+                scale = (float) vHeight / (float) dHeight;
+                dx = (vWidth - dWidth * scale) * 0.5f;
+            } else {
+                scale = (float) vWidth / (float) dWidth;
+                dy = (vHeight - dHeight * scale) * 0.5f;
+            }
+
+            out[0] = scale;
+            out[1] = scale;
+            out[2] = Math.round(dx);
+            out[3] = Math.round(dy);
+        } else if (scaleType == SCALE_TYPE_CENTER_INSIDE) {
+            final float scale;
+
+            if (dWidth <= vWidth && dHeight <= vHeight) {
+                scale = 1.0f;
+            } else {
+                scale = Math.min((float) vWidth / (float) dWidth,
+                        (float) vHeight / (float) dHeight);
+            }
+
+            out[0] = scale;
+            out[1] = scale;
+            out[2] = Math.round((vWidth - dWidth * scale) * 0.5f);
+            out[3] = Math.round((vHeight - dHeight * scale) * 0.5f);
+        } else if (vWidth <= 0 || vHeight <= 0) {
+            // Matrix.setRectToRect() sets all zero for empty destination
+            out[0] = 0.0f;
+            out[1] = 0.0f;
+            out[2] = 0.0f;
+            out[3] = 0.0f;
+        } else {
+            // As Matrix.setRectToRect() with START, CENTER or END
+            float sx = (float) vWidth / dWidth;
+            float sy = (float) vHeight / dHeight;
+            boolean xLarger = false;
+            if (sx > sy) {
+                xLarger = true;
+                sx = sy;
+            } else {
+                sy = sx;
+            }
+
+            float tx = 0.0f;
+            float ty = 0.0f;
+            if (scaleType == SCALE_TYPE_FIT_CENTER || scaleType == SCALE_TYPE_FIT_END) {
+                float diff = xLarger ? vWidth - dWidth * sy : vHeight - dHeight * sy;
+                if (scaleType == SCALE_TYPE_FIT_CENTER) {
+                    diff *= 0.5f;
+                }
+                if (xLarger) {
+                    tx = diff;
+                } else {
+                    ty = diff;
+                }
+            }
+
+            out[0] = sx;
+            out[1] = sy;
+            out[2] = tx;
+            out[3] = ty;
+        }
+        return TRANSFORM_SCALE_TRANSLATE;
+    }
+
+    /**
+     * Computes how the content is drawn as matrix values, in the order of
+     * {@link android.graphics.Matrix#getValues(float[])}, so
+     * {@code Matrix.setValues(values)} gives the draw matrix of the view.
+     * The values are identity if the content is drawn without matrix.
+     *
+     * @param values receives 9 matrix values
+     * @return as {@link #computeTransform(int, int, int, int, int, float[])},
+     * values are left untouched for {@link #TRANSFORM_MATRIX}
+     */
+    public static int computeMatrix(int contentWidth, int contentHeight,
+            int viewWidth, int viewHeight, int scaleType, float[] values) {
+        final int transform = computeTransform(contentWidth, contentHeight,
+                viewWidth, viewHeight, scaleType, values);
+        switch (transform) {
+            case TRANSFORM_MATRIX:
+                return transform;
+            case TRANSFORM_SCALE_TRANSLATE:
+                // Move scale and translate to their places before overwriting
+                final float scaleX = values[0];
+                final float scaleY = values[1];
+                final float translateX = values[2];
+                final float translateY = values[3];
+                setMatrix(values, scaleX, scaleY, translateX, translateY);
+                return transform;
+            default:
+                setMatrix(values, 1.0f, 1.0f, 0.0f, 0.0f);
+                return transform;
+        }
+    }
+
+    private static void setMatrix(float[] values, float scaleX, float scaleY,
+            float translateX, float translateY) {
+        values[0] = scaleX;
+        values[1] = 0.0f;
+        values[2] = translateX;
+        values[3] = 0.0f;
+        values[4] = scaleY;
+        values[5] = translateY;
+        values[6] = 0.0f;
+        values[7] = 0.0f;
+        values[8] = 1.0f;
+    }
+}
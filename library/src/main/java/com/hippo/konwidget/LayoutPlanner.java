@@ -0,0 +1,356 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.konwidget;
+
+/*
+ * Created by Hippo on 10/18/2016.
+ */
+
+/**
+ * Computes the sizes and positions of many {@link AdvImageView}s from the
+ * aspect ratios of their images in one pass, as grids or justified rows.
+ * It has no Android dependencies, so it could run on a background thread,
+ * then the UI thread only measures the views with
+ * {@link Plan#getWidthMeasureSpec(int)} and {@link Plan#getHeightMeasureSpec(int)}.
+ * <p>
+ * The padding, max width, min height and max height are the ones of the views.
+ * Grid items are measured by {@link ImageSizing#measure}, the same as
+ * {@link AdvImageView} with the aspect ratio of the image as
+ * {@code kon_aspectRatio}. Not positive aspect ratios are taken as {@code 1}.
+ * <p>
+ * A planner could be reused, but not by two threads at the same time.
+ */
+public final class LayoutPlanner {
+
+    private int mSpacing;
+    private int mPaddingLeft;
+    private int mPaddingTop;
+    private int mPaddingRight;
+    private int mPaddingBottom;
+    private int mMaxWidth = Integer.MAX_VALUE;
+    private int mMinHeight;
+    private int mMaxHeight = Integer.MAX_VALUE;
+
+    /**
+     * Set the space between items and between rows.
+     */
+    public LayoutPlanner setSpacing(int spacing) {
+        mSpacing = spacing;
+        return this;
+    }
+
+    /**
+     * Set the padding of the views, it's out of the aspect ratio.
+     */
+    public LayoutPlanner setPadding(int left, int top, int right, int bottom) {
+        mPaddingLeft = left;
+        mPaddingTop = top;
+        mPaddingRight = right;
+        mPaddingBottom = bottom;
+        return this;
+    }
+
+    /**
+     * Set the max width of the views, as {@code kon_maxWidth}.
+     */
+    public LayoutPlanner setMaxWidth(int maxWidth) {
+        mMaxWidth = maxWidth;
+        return this;
+    }
+
+    /**
+     * Set the min height of the views, as {@code android:minHeight}.
+     */
+    public LayoutPlanner setMinHeight(int minHeight) {
+        mMinHeight = minHeight;
+        return this;
+    }
+
+    /**
+     * Set the max height of the views, as {@code kon_maxHeight}.
+     */
+    public LayoutPlanner setMaxHeight(int maxHeight) {
+        mMaxHeight = maxHeight;
+        return this;
+    }
+
+    private static float fixAspectRatio(float aspectRatio) {
+        return aspectRatio > 0.0f ? aspectRatio : 1.0f;
+    }
+
+    /**
+     * Lays out the items in columns of the same width. The height of
+     * a row is the height of the tallest item in it. Items are not wider
+     * than the max width, they are at the left of their columns.
+     *
+     * @param aspectRatios width / height of the images
+     * @param containerWidth the width to lay out in
+     * @param columnCount the number of columns
+     */
+    public Plan planGrid(float[] aspectRatios, int containerWidth, int columnCount) {
+        if (columnCount <= 0) {
+            throw new IllegalArgumentException("Column count must be positive: " + columnCount);
+        }
+
+        final int count = aspectRatios.length;
+        final Plan plan = new Plan(count, (count + columnCount - 1) / columnCount);
+        final int available = Math.max(0, containerWidth - mSpacing * (columnCount - 1));
+        final int heightSpec = ImageSizing.makeMeasureSpec(0, ImageSizing.UNSPECIFIED);
+        final int paddingH = mPaddingLeft + mPaddingRight;
+
+        int top = 0;
+        for (int row = 0, start = 0; start < count; row++, start += columnCount) {
+            final int end = Math.min(start + columnCount, count);
+            plan.mRowStarts[row] = start;
+
+            int rowHeight = 0;
+            int left = 0;
+            for (int i = start; i < end; i++) {
+                final int column = i - start;
+                // Give the remainder to the first columns
+                final int columnWidth = available / columnCount
+                        + (column < available % columnCount ? 1 : 0);
+                final int width = Math.min(columnWidth, mMaxWidth);
+                // As the image is loaded, so the max height limits it
+                final float aspectRatio = fixAspectRatio(aspectRatios[i]);
+                final int contentWidth = Math.max(1, width - paddingH);
+                final int contentHeight = Math.max(1, Math.round(contentWidth / aspectRatio));
+                final long measured = ImageSizing.measure(
+                        ImageSizing.makeMeasureSpec(width, ImageSizing.EXACTLY), heightSpec,
+                        true, contentWidth, contentHeight, aspectRatio,
+                        0, mMaxWidth, mMinHeight, mMaxHeight,
+                        mPaddingLeft, mPaddingTop, mPaddingRight, mPaddingBottom, 0, 0);
+                final int height = ImageSizing.unpackHeight(measured) & ImageSizing.MEASURED_SIZE_MASK;
+
+                plan.set(i, left, top, width, height);
+                rowHeight = Math.max(rowHeight, height);
+                left += columnWidth + mSpacing;
+            }
+            top += rowHeight + mSpacing;
+        }
+        plan.mHeight = count != 0 ? top - mSpacing : 0;
+        return plan;
+    }
+
+    /**
+     * Packs the items into rows which fill the width, keeping the aspect
+     * ratios. Each row takes items while its height gets closer to
+     * the target height. The last row isn't stretched taller than
+     * the target height, no row is taller than the max height and
+     * no item is wider than the max width, so they may not fill the width.
+     * If the min height makes a row wider than the container, the items
+     * are narrowed to fit, so they are narrower than their aspect ratios.
+     *
+     * @param aspectRatios width / height of the images
+     * @param containerWidth the width to lay out in
+     * @param targetRowHeight the preferred height of rows, with padding
+     */
+    public Plan planJustifiedRows(float[] aspectRatios, int containerWidth, int targetRowHeight) {
+        final int count = aspectRatios.length;
+        final int paddingV = mPaddingTop + mPaddingBottom;
+        final float targetHeight = Math.max(1, targetRowHeight - paddingV);
+
+        // At most one row per item
+        final Plan plan = new Plan(count, count);
+        int rowCount = 0;
+        int top = 0;
+        int start = 0;
+        while (start < count) {
+            // Find the end of the row
+            int end = start + 1;
+            float height = getRowHeight(aspectRatios, start, end, containerWidth);
+            while (end < count) {
+                final float nextHeight = getRowHeight(aspectRatios, start, end + 1, containerWidth);
+                if (height <= targetHeight
+                        || Math.abs(nextHeight - targetHeight) > Math.abs(height - targetHeight)) {
+                    break;
+                }
+                height = nextHeight;
+                end++;
+            }
+
+            if (end == count) {
+                // Don't stretch the last row
+                height = Math.min(height, targetHeight);
+            }
+            final int contentHeight = Math.max(Math.max(0, mMinHeight - paddingV),
+                    Math.min(mMaxHeight - paddingV, (int) height));
+            final int rowHeight = contentHeight + paddingV;
+
+            plan.mRowStarts[rowCount++] = start;
+            layoutRow(plan, aspectRatios, start, end, containerWidth, top,
+                    contentHeight, rowHeight, contentHeight == (int) height && end != count);
+            top += rowHeight + mSpacing;
+            start = end;
+        }
+        plan.mRowCount = rowCount;
+        plan.mHeight = count != 0 ? top - mSpacing : 0;
+        return plan;
+    }
+
+    /**
+     * Returns the content height which makes the items fill the width.
+     * Items limited by the max width take the max width, the others share
+     * the rest. If all are limited, the row can't be filled at any height.
+     */
+    private float getRowHeight(float[] aspectRatios, int start, int end, int containerWidth) {
+        final int paddingH = mPaddingLeft + mPaddingRight;
+        final int available = containerWidth - mSpacing * (end - start - 1) - paddingH * (end - start);
+        final float maxContentWidth = (float) mMaxWidth - paddingH;
+
+        float height = 0.0f;
+        // Limited items leave more space to the others, so it only grows
+        for (int i = start; i <= end; i++) {
+            float fixedWidth = 0.0f;
+            float ratioSum = 0.0f;
+            for (int j = start; j < end; j++) {
+                final float ratio = fixAspectRatio(aspectRatios[j]);
+                if (ratio * height > maxContentWidth) {
+                    fixedWidth += maxContentWidth;
+                } else {
+                    ratioSum += ratio;
+                }
+            }
+            if (ratioSum == 0.0f) {
+                return Float.MAX_VALUE;
+            }
+            final float newHeight = Math.max(1.0f, (available - fixedWidth) / ratioSum);
+            if (newHeight == height) {
+                break;
+            }
+            height = newHeight;
+        }
+        return height;
+    }
+
+    private int getItemWidth(float aspectRatio, int contentHeight) {
+        return Math.min(mMaxWidth,
+                Math.round(fixAspectRatio(aspectRatio) * contentHeight) + mPaddingLeft + mPaddingRight);
+    }
+
+    private void layoutRow(Plan plan, float[] aspectRatios, int start, int end,
+            int containerWidth, int top, int contentHeight, int rowHeight, boolean fill) {
+        final int paddingH = mPaddingLeft + mPaddingRight;
+
+        // The min height may make it wider than the container, then narrow the items
+        int width = mSpacing * (end - start - 1);
+        for (int i = start; i < end; i++) {
+            width += getItemWidth(aspectRatios[i], contentHeight);
+        }
+        final boolean overflow = width > containerWidth;
+        final float scale = overflow ? (float) (containerWidth - mSpacing * (end - start - 1)
+                - paddingH * (end - start)) / (width - mSpacing * (end - start - 1)
+                - paddingH * (end - start)) : 1.0f;
+
+        int left = 0;
+        for (int i = start; i < end; i++) {
+            int itemWidth = getItemWidth(aspectRatios[i], contentHeight);
+            if (overflow) {
+                itemWidth = paddingH + Math.max(0, (int) ((itemWidth - paddingH) * scale));
+            }
+            if ((fill || overflow) && i == end - 1) {
+                // Rounding errors go to the last item
+                itemWidth = Math.max(paddingH, Math.min(mMaxWidth, containerWidth - left));
+            }
+            plan.set(i, left, top, itemWidth, rowHeight);
+            left += itemWidth + mSpacing;
+        }
+    }
+
+    /**
+     * The sizes and positions of the items, relative to the top left
+     * of the container.
+     */
+    public static final class Plan {
+
+        private final int[] mLefts;
+        private final int[] mTops;
+        private final int[] mWidths;
+        private final int[] mHeights;
+        private final int[] mRowStarts;
+        private int mRowCount;
+        private int mHeight;
+
+        private Plan(int count, int maxRowCount) {
+            mLefts = new int[count];
+            mTops = new int[count];
+            mWidths = new int[count];
+            mHeights = new int[count];
+            mRowStarts = new int[maxRowCount];
+            mRowCount = maxRowCount;
+        }
+
+        private void set(int index, int left, int top, int width, int height) {
+            mLefts[index] = left;
+            mTops[index] = top;
+            mWidths[index] = width;
+            mHeights[index] = height;
+        }
+
+        public int getItemCount() {
+            return mWidths.length;
+        }
+
+        public int getLeft(int index) {
+            return mLefts[index];
+        }
+
+        public int getTop(int index) {
+            return mTops[index];
+        }
+
+        public int getWidth(int index) {
+            return mWidths[index];
+        }
+
+        public int getHeight(int index) {
+            return mHeights[index];
+        }
+
+        /**
+         * Returns the exact width spec to measure the view of the item with.
+         */
+        public int getWidthMeasureSpec(int index) {
+            return ImageSizing.makeMeasureSpec(mWidths[index], ImageSizing.EXACTLY);
+        }
+
+        /**
+         * Returns the exact height spec to measure the view of the item with.
+         */
+        public int getHeightMeasureSpec(int index) {
+            return ImageSizing.makeMeasureSpec(mHeights[index], ImageSizing.EXACTLY);
+        }
+
+        public int getRowCount() {
+            return mRowCount;
+        }
+
+        /**
+         * Returns the index of the first item in the row.
+         */
+        public int getRowStart(int row) {
+            return mRowStarts[row];
+        }
+
+        /**
+         * Returns the height of all rows and the spacing between them.
+         */
+        public int getHeight() {
+            return mHeight;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.konwidget;
+
+/*
+ * Created by Hippo on 10/18/2016.
+ */
+
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.support.annotation.Nullable;
+
+/**
+ * What a load of an image costs, filled by {@link ImageLoader}
+ * and reported by {@link AdvImageView} through {@link ImageMetrics}.
+ */
+final class LoadMetrics {
+
+    // Time looking up the caches
+    long resolveNanos;
+    // Time decoding, 0 if it's found in memory
+    long decodeNanos;
+    // Bytes of the decoded bitmap, 0 if nothing is decoded
+    int decodedBytes;
+
+    void reset() {
+        resolveNanos = 0;
+        decodeNanos = 0;
+        decodedBytes = 0;
+    }
+
+    /**
+     * Returns the bytes of the bitmap of the drawable, or {@code 0}
+     * if it isn't a bitmap.
+     */
+    static int getByteCount(@Nullable Drawable drawable) {
+        if (drawable instanceof BitmapDrawable) {
+            final Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
+            if (bitmap != null) {
+                return bitmap.getRowBytes() * bitmap.getHeight();
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.konwidget;
+
+/*
+ * Created by Hippo on 10/18/2016.
+ */
+
+/**
+ * The inputs and the result of the last measurement of {@link AdvImageView},
+ * to skip measuring again if the inputs are the same.
+ * <p>
+ * It also tells whether the view was measured with only one pair of specs
+ * before last layout. If so, measuring with the last specs again tells
+ * whether a new content size changes the layout.
+ */
+final class MeasureCache {
+
+    private boolean mValid;
+    private boolean mHasSpecs;
+    private boolean mLaidOut;
+    // Measured with different specs in one layout pass
+    private boolean mSpecsVaried;
+
+    private int mWidthMeasureSpec;
+    private int mHeightMeasureSpec;
+    private boolean mHasContent;
+    private int mContentWidth;
+    private int mContentHeight;
+    private float mAspectRatio;
+    private int mMinWidth;
+    private int mMaxWidth;
+    private int mMinHeight;
+    private int mMaxHeight;
+    private int mPaddingLeft;
+    private int mPaddingTop;
+    private int mPaddingRight;
+    private int mPaddingBottom;
+    private int mSuggestedMinWidth;
+    private int mSuggestedMinHeight;
+
+    private int mMeasuredWidth;
+    private int mMeasuredHeight;
+
+    /**
+     * Keeps the inputs.
+     *
+     * @return {@code true} if the result of last measurement can be used,
+     * {@code false} if any input has changed, or there is no result yet
+     */
+    boolean update(int widthMeasureSpec, int heightMeasureSpec,
+            boolean hasContent, int contentWidth, int contentHeight, float aspectRatio,
+            int minWidth, int maxWidth, int minHeight, int maxHeight,
+            int paddingLeft, int paddingTop, int paddingRight, int paddingBottom,
+            int suggestedMinWidth, int suggestedMinHeight) {
+        if (mLaidOut) {
+            // A new layout pass
+            mLaidOut = false;
+            mSpecsVaried = false;
+        } else if (mHasSpecs && (mWidthMeasureSpec != widthMeasureSpec
+                || mHeightMeasureSpec != heightMeasureSpec)) {
+            mSpecsVaried = true;
+        }
+        mHasSpecs = true;
+
+        if (mValid && mWidthMeasureSpec == widthMeasureSpec
+                && mHeightMeasureSpec == heightMeasureSpec
+                && mHasContent == hasContent
+                && mContentWidth == contentWidth && mContentHeight == contentHeight
+                && Float.compare(mAspectRatio, aspectRatio) == 0
+                && mMinWidth == minWidth && mMaxWidth == maxWidth
+                && mMinHeight == minHeight && mMaxHeight == maxHeight
+                && mPaddingLeft == paddingLeft && mPaddingTop == paddingTop
+                && mPaddingRight == paddingRight && mPaddingBottom == paddingBottom
+                && mSuggestedMinWidth == suggestedMinWidth
+                && mSuggestedMinHeight == suggestedMinHeight) {
+            return true;
+        }
+
+        // No result for the new inputs until setResult()
+        mValid = false;
+        mWidthMeasureSpec = widthMeasureSpec;
+        mHeightMeasureSpec = heightMeasureSpec;
+        mHasContent = hasContent;
+        mContentWidth = contentWidth;
+        mContentHeight = contentHeight;
+        mAspectRatio = aspectRatio;
+        mMinWidth = minWidth;
+        mMaxWidth = maxWidth;
+        mMinHeight = minHeight;
+        mMaxHeight = maxHeight;
+        mPaddingLeft = paddingLeft;
+        mPaddingTop = paddingTop;
+        mPaddingRight = paddingRight;
+        mPaddingBottom = paddingBottom;
+        mSuggestedMinWidth = suggestedMinWidth;
+        mSuggestedMinHeight = suggestedMinHeight;
+        return false;
+    }
+
+    /**
+     * Keeps the measured size, with state bits, for the inputs of last update.
+     */
+    void setResult(int measuredWidth, int measuredHeight) {
+        mMeasuredWidth = measuredWidth;
+        mMeasuredHeight = measuredHeight;
+        mValid = true;
+    }
+
+    /**
+     * Tells that the view is laid out, the layout pass is over.
+     */
+    void onLayout() {
+        mLaidOut = true;
+    }
+
+    /**
+     * Returns whether measuring with {@link #getWidthMeasureSpec()} and
+     * {@link #getHeightMeasureSpec()} again tells whether the layout changes.
+     * It's {@code false} if there is no result, or the view was measured with
+     * different specs in last layout pass, as the parent may lay it out
+     * by the size from other specs, for example weights of LinearLayout.
+     */
+    boolean canRemeasure() {
+        return mValid && !mSpecsVaried;
+    }
+
+    int getWidthMeasureSpec() {
+        return mWidthMeasureSpec;
+    }
+
+    int getHeightMeasureSpec() {
+        return mHeightMeasureSpec;
+    }
+
+    int getMeasuredWidth() {
+        return mMeasuredWidth;
+    }
+
+    int getMeasuredHeight() {
+        return mMeasuredHeight;
+    }
+}
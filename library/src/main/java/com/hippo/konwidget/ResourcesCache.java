@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.konwidget;
+
+/*
+ * Created by Hippo on 10/18/2016.
+ */
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+import android.support.v4.util.LruCache;
+
+/**
+ * Caches the {@link Resources} of packages and the ids of resources looked up
+ * by name, for android.resource Uris. Entries of a package are dropped once
+ * it's changed, replaced or removed.
+ */
+final class ResourcesCache {
+    private ResourcesCache() {}
+
+    private static final int MAX_RESOURCES = 16;
+    private static final int MAX_IDS = 256;
+
+    private static final LruCache<String, Resources> sResources =
+            new LruCache<String, Resources>(MAX_RESOURCES);
+    // authority/type/name to id
+    private static final LruCache<String, Integer> sIds =
+            new LruCache<String, Integer>(MAX_IDS);
+
+    private static boolean sReceiverRegistered;
+
+    private static synchronized void registerReceiver(Context context) {
+        if (sReceiverRegistered) {
+            return;
+        }
+        sReceiverRegistered = true;
+
+        final IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addDataScheme("package");
+        context.getApplicationContext().registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                if (intent.getData() != null) {
+                    remove(intent.getData().getSchemeSpecificPart());
+                }
+            }
+        }, filter);
+    }
+
+    /**
+     * Returns the resources of the package.
+     */
+    static Resources getResources(Context context, String authority)
+            throws PackageManager.NameNotFoundException {
+        registerReceiver(context);
+        Resources r = sResources.get(authority);
+        if (r == null) {
+            r = context.getPackageManager().getResourcesForApplication(authority);
+            sResources.put(authority, r);
+        }
+        return r;
+    }
+
+    /**
+     * Returns the id of the resource in the package, or {@code 0} if not found.
+     */
+    static int getIdentifier(Resources r, String authority, String type, String name) {
+        final String key = authority + '/' + type + '/' + name;
+        final Integer cached = sIds.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        final int id = r.getIdentifier(name, type, authority);
+        if (id != 0) {
+            sIds.put(key, id);
+        }
+        return id;
+    }
+
+    private static void remove(String packageName) {
+        sResources.remove(packageName);
+        final String prefix = packageName + '/';
+        for (String key : sIds.snapshot().keySet()) {
+            if (key.startsWith(prefix)) {
+                sIds.remove(key);
+            }
+        }
+    }
+}
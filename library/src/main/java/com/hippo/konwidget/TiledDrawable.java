@@ -0,0 +1,351 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.konwidget;
+
+/*
+ * Created by Hippo on 10/18/2016.
+ */
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Draws a large image with a {@link BitmapRegionDecoder}. A downscaled base
+ * image is always drawn, and the tiles in the visible area are decoded in
+ * background at the sample size matched to the scale it's drawn with,
+ * then drawn over the base image. Tiles of all tiled drawables share
+ * one memory budget.
+ * <p>
+ * The visible area is taken from the clip of the canvas. The scale of
+ * the canvas must be set by {@link #setDrawScale(float)} before drawing.
+ * <p>
+ * The base image and the tiles are decoded as they are stored, and drawn
+ * with the EXIF orientation through the canvas matrix.
+ */
+@TargetApi(Build.VERSION_CODES.GINGERBREAD_MR1)
+final class TiledDrawable extends Drawable {
+
+    private static final String LOG_TAG = TiledDrawable.class.getSimpleName();
+
+    // The size of a tile in decoded pixels
+    private static final int TILE_SIZE = 256;
+
+    // Tiles of all tiled drawables share one budget, keyed by getTileKey()
+    private static final LruCache<TileKey, Bitmap> sTiles = new LruCache<TileKey, Bitmap>(
+            (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 16)) {
+        @Override
+        protected int sizeOf(TileKey key, Bitmap value) {
+            return value.getRowBytes() * value.getHeight();
+        }
+    };
+    private static final AtomicInteger sNextId = new AtomicInteger();
+
+    private static final int ID_SHIFT = 40;
+    private static final int SAMPLE_SHIFT = 36;
+    private static final int COL_SHIFT = 18;
+
+    private final BitmapRegionDecoder mDecoder;
+    private final Object mDecoderLock = new Object();
+    private final Bitmap mBase;
+    private final int mBaseSampleSize;
+    // The size of the image as it's stored
+    private final int mWidth;
+    private final int mHeight;
+    // The size of the image as it's shown
+    private final int mOrientedWidth;
+    private final int mOrientedHeight;
+    // Maps the stored image to the shown image
+    private final Matrix mOrientationMatrix = new Matrix();
+    // Maps the stored image to the bounds
+    private final Matrix mDrawMatrix = new Matrix();
+    private final Rect mImageRect = new Rect();
+    private float mBoundsScale;
+
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG | Paint.DITHER_FLAG);
+    // Tells the tiles of this drawable in sTiles
+    private final long mId = (long) (sNextId.getAndIncrement() & 0xffffff) << ID_SHIFT;
+    // Tiles being decoded, only touched on the UI thread
+    private final HashSet<TileKey> mPending = new HashSet<TileKey>();
+    // Finished tasks to reuse, only touched on the UI thread
+    private final ArrayList<TileTask> mFreeTasks = new ArrayList<TileTask>();
+    // Looks up tiles without boxing a key, only touched on the UI thread
+    private final TileKey mLookupKey = new TileKey();
+
+    private float mDrawScale = 1.0f;
+    // Tiles of other sample sizes are not wanted anymore
+    private volatile int mSampleSize;
+    private volatile boolean mRecycled;
+
+    private final Rect mClip = new Rect();
+    private final Rect mTileRect = new Rect();
+
+    /**
+     * @param orientation the EXIF orientation of the image
+     */
+    TiledDrawable(BitmapRegionDecoder decoder, Bitmap base, int baseSampleSize, int orientation) {
+        mDecoder = decoder;
+        mBase = base;
+        mBaseSampleSize = baseSampleSize;
+        mWidth = decoder.getWidth();
+        mHeight = decoder.getHeight();
+        mImageRect.set(0, 0, mWidth, mHeight);
+
+        final boolean transposed = DrawableDecoder.isTransposed(orientation);
+        mOrientedWidth = transposed ? mHeight : mWidth;
+        mOrientedHeight = transposed ? mWidth : mHeight;
+        if (DrawableDecoder.setOrientationMatrix(orientation, mOrientationMatrix)) {
+            // Move the rotated or flipped image back to the origin
+            final RectF rect = new RectF(mImageRect);
+            mOrientationMatrix.mapRect(rect);
+            mOrientationMatrix.postTranslate(-rect.left, -rect.top);
+        }
+    }
+
+    /**
+     * Sets the scale of the canvas this drawable is drawn to.
+     */
+    void setDrawScale(float drawScale) {
+        mDrawScale = drawScale;
+    }
+
+    /**
+     * Stops decoding and frees the tiles. It only draws the base image after that.
+     * The decoder is recycled in background, after the region being decoded.
+     */
+    void recycle() {
+        if (mRecycled) {
+            return;
+        }
+        mRecycled = true;
+        mPending.clear();
+        mFreeTasks.clear();
+        ImageLoader.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mDecoderLock) {
+                    mDecoder.recycle();
+                }
+                for (TileKey key : sTiles.snapshot().keySet()) {
+                    if ((key.mValue & ~((1L << ID_SHIFT) - 1)) == mId) {
+                        sTiles.remove(key);
+                    }
+                }
+            }
+        });
+    }
+
+    private long getTileKey(int sampleSize, int col, int row) {
+        return mId | ((long) Integer.numberOfTrailingZeros(sampleSize) << SAMPLE_SHIFT)
+                | ((long) col << COL_SHIFT) | row;
+    }
+
+    private void getTileRect(int col, int row, int span, Rect rect) {
+        rect.set(col * span, row * span,
+                Math.min((col + 1) * span, mWidth), Math.min((row + 1) * span, mHeight));
+    }
+
+    @Override
+    protected void onBoundsChange(Rect bounds) {
+        final float scaleX = (float) bounds.width() / mOrientedWidth;
+        final float scaleY = (float) bounds.height() / mOrientedHeight;
+        mDrawMatrix.set(mOrientationMatrix);
+        mDrawMatrix.postScale(scaleX, scaleY);
+        mDrawMatrix.postTranslate(bounds.left, bounds.top);
+        mBoundsScale = Math.max(scaleX, scaleY);
+    }
+
+    @Override
+    public void draw(@NonNull Canvas canvas) {
+        if (getBounds().isEmpty()) {
+            return;
+        }
+
+        // Draw in the pixels of the stored image
+        final int saveCount = canvas.save();
+        canvas.concat(mDrawMatrix);
+        canvas.drawBitmap(mBase, null, mImageRect, mPaint);
+        if (!mRecycled) {
+            drawTiles(canvas);
+        }
+        canvas.restoreToCount(saveCount);
+    }
+
+    private void drawTiles(Canvas canvas) {
+        final float scale = mDrawScale * mBoundsScale;
+        int sampleSize = 1;
+        while (sampleSize * 2 * scale <= 1.0f) {
+            sampleSize *= 2;
+        }
+        mSampleSize = sampleSize;
+        if (sampleSize >= mBaseSampleSize) {
+            // The base image is fine enough
+            return;
+        }
+
+        if (!canvas.getClipBounds(mClip)) {
+            return;
+        }
+
+        // The visible area in image pixels
+        final int left = Math.max(0, mClip.left);
+        final int top = Math.max(0, mClip.top);
+        final int right = Math.min(mWidth, mClip.right);
+        final int bottom = Math.min(mHeight, mClip.bottom);
+
+        final int span = TILE_SIZE * sampleSize;
+        for (int row = top / span; row * span < bottom; row++) {
+            for (int col = left / span; col * span < right; col++) {
+                mLookupKey.mValue = getTileKey(sampleSize, col, row);
+                final Bitmap tile = sTiles.get(mLookupKey);
+                if (tile != null) {
+                    getTileRect(col, row, span, mTileRect);
+                    canvas.drawBitmap(tile, null, mTileRect, mPaint);
+                } else if (!mPending.contains(mLookupKey)) {
+                    final int last = mFreeTasks.size() - 1;
+                    final TileTask task = last >= 0 ? mFreeTasks.remove(last) : new TileTask();
+                    task.mKey.mValue = mLookupKey.mValue;
+                    task.mOptions.inSampleSize = sampleSize;
+                    getTileRect(col, row, span, task.mRegion);
+                    mPending.add(task.mKey);
+                    ImageLoader.execute(task);
+                }
+            }
+        }
+    }
+
+    /**
+     * The key of a tile in sTiles, mutable so lookups don't box a long.
+     * Keys in sTiles and mPending are never changed.
+     */
+    private static final class TileKey {
+        long mValue;
+
+        TileKey() {}
+
+        TileKey(long value) {
+            mValue = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof TileKey && ((TileKey) o).mValue == mValue;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (mValue ^ (mValue >>> 32));
+        }
+    }
+
+    /**
+     * Decodes a tile in background and puts it into sTiles on the UI thread.
+     * It's reused for other tiles once it's delivered.
+     */
+    private final class TileTask implements Runnable {
+        private final TileKey mKey = new TileKey();
+        private final Rect mRegion = new Rect();
+        private final BitmapFactory.Options mOptions = new BitmapFactory.Options();
+        private Bitmap mTile;
+
+        private final Runnable mDeliver = new Runnable() {
+            @Override
+            public void run() {
+                mPending.remove(mKey);
+                final Bitmap tile = mTile;
+                mTile = null;
+                if (mRecycled) {
+                    return;
+                }
+                if (tile != null) {
+                    sTiles.put(new TileKey(mKey.mValue), tile);
+                    invalidateSelf();
+                }
+                mFreeTasks.add(TileTask.this);
+            }
+        };
+
+        @Override
+        public void run() {
+            // Skip it if the scale has changed
+            if (mSampleSize == mOptions.inSampleSize) {
+                synchronized (mDecoderLock) {
+                    if (!mRecycled) {
+                        try {
+                            mTile = mDecoder.decodeRegion(mRegion, mOptions);
+                        } catch (Exception e) {
+                            Log.w(LOG_TAG, "Unable to decode region: " + mRegion, e);
+                        }
+                    }
+                }
+            }
+            ImageLoader.post(mDeliver);
+        }
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return mOrientedWidth;
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return mOrientedHeight;
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        if (alpha != mPaint.getAlpha()) {
+            mPaint.setAlpha(alpha);
+            invalidateSelf();
+        }
+    }
+
+    @Override
+    public int getAlpha() {
+        return mPaint.getAlpha();
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter colorFilter) {
+        mPaint.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        return !mBase.hasAlpha() && mPaint.getAlpha() == 255
+                ? PixelFormat.OPAQUE : PixelFormat.TRANSLUCENT;
+    }
+}
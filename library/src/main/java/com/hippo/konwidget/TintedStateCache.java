@@ -0,0 +1,148 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.konwidget;
+
+/*
+ * Created by Hippo on 10/18/2016.
+ */
+
+import android.content.res.ColorStateList;
+import android.graphics.PorterDuff;
+import android.graphics.drawable.Drawable;
+import android.os.Parcel;
+import android.support.annotation.Nullable;
+import android.support.v4.util.LruCache;
+
+import java.util.Arrays;
+import java.util.WeakHashMap;
+
+/**
+ * Caches the states of mutated drawables with tint, color filter and alpha
+ * applied, per source state, so views showing the same resource with the same
+ * modifications share one state instead of a mutated copy each.
+ */
+final class TintedStateCache {
+    private TintedStateCache() {}
+
+    // Keeps the most recent modifications of each source
+    private static final int MAX_STATES_PER_SOURCE = 16;
+
+    // Source states are held weakly, tinted states go with them
+    private static final WeakHashMap<Drawable.ConstantState, LruCache<Key, Drawable.ConstantState>> sStates =
+            new WeakHashMap<Drawable.ConstantState, LruCache<Key, Drawable.ConstantState>>();
+
+    /**
+     * The modifications applied to the source state, compared by value,
+     * so a new tint list or color filter of the same colors finds the state.
+     * Only a color filter of a color and a mode could be compared.
+     */
+    static final class Key {
+        private final boolean mHasTint;
+        private final int mTintColor;
+        // The states and colors of a stateful tint list, null for none
+        private final byte[] mTintStates;
+        private final boolean mHasTintMode;
+        private final PorterDuff.Mode mTintMode;
+        private final boolean mHasColorFilter;
+        private final PorterDuff.Mode mFilterMode;
+        private final int mFilterColor;
+        private final int mAlpha;
+
+        /**
+         * @param filterMode the mode of the PorterDuff color filter, {@code null} for none
+         */
+        Key(boolean hasTint, @Nullable ColorStateList tint,
+                boolean hasTintMode, @Nullable PorterDuff.Mode tintMode,
+                boolean hasColorFilter, @Nullable PorterDuff.Mode filterMode, int filterColor,
+                int alpha) {
+            mHasTint = hasTint;
+            mTintColor = hasTint && tint != null ? tint.getDefaultColor() : 0;
+            mTintStates = hasTint && tint != null && tint.isStateful() ? marshall(tint) : null;
+            mHasTintMode = hasTintMode;
+            mTintMode = hasTintMode ? tintMode : null;
+            mHasColorFilter = hasColorFilter;
+            mFilterMode = hasColorFilter ? filterMode : null;
+            mFilterColor = mFilterMode != null ? filterColor : 0;
+            mAlpha = alpha;
+        }
+
+        private static byte[] marshall(ColorStateList tint) {
+            final Parcel parcel = Parcel.obtain();
+            try {
+                tint.writeToParcel(parcel, 0);
+                return parcel.marshall();
+            } finally {
+                parcel.recycle();
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key that = (Key) o;
+            return mHasTint == that.mHasTint && mTintColor == that.mTintColor
+                    && Arrays.equals(mTintStates, that.mTintStates)
+                    && mHasTintMode == that.mHasTintMode && mTintMode == that.mTintMode
+                    && mHasColorFilter == that.mHasColorFilter && mFilterMode == that.mFilterMode
+                    && mFilterColor == that.mFilterColor && mAlpha == that.mAlpha;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mHasTint ? 1 : 0;
+            result = 31 * result + mTintColor;
+            result = 31 * result + Arrays.hashCode(mTintStates);
+            result = 31 * result + (mHasTintMode ? 1 : 0);
+            result = 31 * result + (mTintMode != null ? mTintMode.hashCode() : 0);
+            result = 31 * result + (mHasColorFilter ? 1 : 0);
+            result = 31 * result + (mFilterMode != null ? mFilterMode.hashCode() : 0);
+            result = 31 * result + mFilterColor;
+            result = 31 * result + mAlpha;
+            return result;
+        }
+    }
+
+    /**
+     * Returns the state of the source state with the modifications applied.
+     *
+     * @return {@code null} if it's not cached
+     */
+    @Nullable
+    static synchronized Drawable.ConstantState get(Drawable.ConstantState source, Key key) {
+        final LruCache<Key, Drawable.ConstantState> states = sStates.get(source);
+        return states != null ? states.get(key) : null;
+    }
+
+    /**
+     * Keeps the state of the source state with the modifications applied.
+     * No drawable which may be modified again should have the state.
+     */
+    static synchronized void put(Drawable.ConstantState source, Key key,
+            Drawable.ConstantState tinted) {
+        LruCache<Key, Drawable.ConstantState> states = sStates.get(source);
+        if (states == null) {
+            states = new LruCache<Key, Drawable.ConstantState>(MAX_STATES_PER_SOURCE);
+            sStates.put(source, states);
+        }
+        states.put(key, tinted);
+    }
+}
@@ -23,6 +23,10 @@ package com.hippo.konwidget;
 import android.graphics.PorterDuff;
 import android.os.Build;
 
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
 class Utils {
     private Utils() {}
 
@@ -47,4 +51,25 @@ class Utils {
             default: return defaultMode;
         }
     }
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * Returns the lowercase hex MD5 of the string.
+     */
+    public static String md5(String str) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("MD5").digest(str.getBytes("UTF-8"));
+            final char[] chars = new char[digest.length * 2];
+            for (int i = 0; i < digest.length; i++) {
+                chars[i * 2] = HEX_DIGITS[(digest[i] >> 4) & 0xf];
+                chars[i * 2 + 1] = HEX_DIGITS[digest[i] & 0xf];
+            }
+            return new String(chars);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 }
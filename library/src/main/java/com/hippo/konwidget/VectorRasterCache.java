@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.konwidget;
+
+/*
+ * Created by Hippo on 10/18/2016.
+ */
+
+import android.annotation.TargetApi;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.VectorDrawable;
+import android.os.Build;
+import android.support.annotation.Nullable;
+import android.support.graphics.drawable.VectorDrawableCompat;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+import java.util.WeakHashMap;
+
+/**
+ * A process-wide cache of vector drawables rasterized at the size they are drawn,
+ * shared by the views which show the same resource at the same size and tint.
+ */
+final class VectorRasterCache {
+    private VectorRasterCache() {}
+
+    private static final String LOG_TAG = VectorRasterCache.class.getSimpleName();
+
+    // Larger vectors are drawn as they are
+    static final int MAX_PIXELS = 2048 * 2048;
+
+    private static final LruCache<String, Bitmap> sCache = new LruCache<String, Bitmap>(
+            (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 32)) {
+        @Override
+        protected int sizeOf(String key, Bitmap value) {
+            return value.getRowBytes() * value.getHeight();
+        }
+    };
+
+    // Themes are held weakly, and ids are never reused, so a new theme
+    // never takes the rasters of a theme which is gone
+    private static final WeakHashMap<Resources.Theme, Integer> sThemeIds =
+            new WeakHashMap<Resources.Theme, Integer>();
+    private static int sNextThemeId;
+
+    /**
+     * Returns the id of the theme for the key, unique in the process.
+     */
+    static synchronized int getThemeId(@Nullable Resources.Theme theme) {
+        if (theme == null) {
+            return 0;
+        }
+        Integer id = sThemeIds.get(theme);
+        if (id == null) {
+            id = ++sNextThemeId;
+            sThemeIds.put(theme, id);
+        }
+        return id;
+    }
+
+    /**
+     * Returns whether the drawable is a vector drawable which isn't animated.
+     */
+    static boolean isStaticVector(Drawable drawable) {
+        return drawable instanceof VectorDrawableCompat
+                || (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+                && isPlatformVector(drawable));
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static boolean isPlatformVector(Drawable drawable) {
+        return drawable instanceof VectorDrawable;
+    }
+
+    /**
+     * Returns the bitmap for the key, or rasterizes the drawable in its bounds
+     * to a bitmap of the size.
+     *
+     * @param key identifies the resource, the size, the tint, the alpha, the layout
+     *            direction, the theme by {@link #getThemeId(Resources.Theme)}, the ui mode,
+     *            the density and the state of stateful vectors
+     * @return {@code null} if out of memory
+     */
+    @Nullable
+    static Bitmap obtain(String key, Drawable drawable, int width, int height) {
+        Bitmap bitmap = sCache.get(key);
+        if (bitmap != null) {
+            return bitmap;
+        }
+
+        try {
+            bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        } catch (OutOfMemoryError e) {
+            Log.w(LOG_TAG, "Out of memory to rasterize " + key, e);
+            return null;
+        }
+        final Rect bounds = drawable.getBounds();
+        final Canvas canvas = new Canvas(bitmap);
+        canvas.scale((float) width / bounds.width(), (float) height / bounds.height());
+        canvas.translate(-bounds.left, -bounds.top);
+        drawable.draw(canvas);
+
+        sCache.put(key, bitmap);
+        return bitmap;
+    }
+}
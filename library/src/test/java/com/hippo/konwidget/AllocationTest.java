@@ -0,0 +1,163 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.konwidget;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Fails if the pure Java code run by measuring and layout allocates.
+ * Skipped if the JVM can't count allocated bytes.
+ */
+public class AllocationTest {
+
+    private static final int ITERATIONS = 100000;
+
+    /**
+     * Returns the bytes allocated by running the task {@link #ITERATIONS} times
+     * after warming up. The test is skipped if it can't be measured on this JVM.
+     */
+    private static long measure(Runnable task) {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(sunBean.isThreadAllocatedMemorySupported());
+        sunBean.setThreadAllocatedMemoryEnabled(true);
+
+        // Let the JIT settle
+        for (int i = 0; i < ITERATIONS; i++) {
+            task.run();
+        }
+
+        final long id = Thread.currentThread().getId();
+        final long start = sunBean.getThreadAllocatedBytes(id);
+        for (int i = 0; i < ITERATIONS; i++) {
+            task.run();
+        }
+        return sunBean.getThreadAllocatedBytes(id) - start;
+    }
+
+    private static void assertNoAllocation(Runnable task) {
+        final long bytes = measure(task);
+        // Less than a byte per run, only the measuring itself
+        assertTrue("Allocated " + bytes + " bytes", bytes < ITERATIONS);
+    }
+
+    @Test
+    public void testBoundsStateUnchanged() {
+        final BoundsState state = new BoundsState();
+        final Object content = new Object();
+        assertNoAllocation(new Runnable() {
+            @Override
+            public void run() {
+                state.update(content, 100, 50, 200, 200, AdvImageView.SCALE_TYPE_FIT_CENTER);
+            }
+        });
+    }
+
+    @Test
+    public void testBoundsStateChanged() {
+        final BoundsState state = new BoundsState();
+        final Object content = new Object();
+        assertNoAllocation(new Runnable() {
+            private int mSize;
+
+            @Override
+            public void run() {
+                state.update(content, 100, 50, 200 + (mSize++ & 1), 200,
+                        AdvImageView.SCALE_TYPE_CENTER_CROP);
+            }
+        });
+    }
+
+    @Test
+    public void testDecodeOptions() {
+        final DecodeOptions options = new DecodeOptions(320, 240,
+                AdvImageView.SCALE_TYPE_CENTER_CROP, AdvImageView.DECODE_MODE_SAMPLE);
+        assertNoAllocation(new Runnable() {
+            @Override
+            public void run() {
+                options.getScale(4000, 3000);
+                options.getSampleSize(4000, 3000);
+            }
+        });
+    }
+
+    @Test
+    public void testMeasure() {
+        assertNoAllocation(new Runnable() {
+            private int mSize;
+
+            @Override
+            public void run() {
+                final int size = 300 + (mSize++ & 63);
+                ImageSizing.measure(ImageSizing.makeMeasureSpec(size, ImageSizing.EXACTLY),
+                        ImageSizing.makeMeasureSpec(size * 2, ImageSizing.AT_MOST),
+                        true, 1920, 1080, ImageSizing.ASPECT_RATIO_OF_DRAWABLE,
+                        0, Integer.MAX_VALUE, 0, 400, 4, 4, 4, 4, 0, 0);
+                ImageSizing.measure(ImageSizing.makeMeasureSpec(0, ImageSizing.UNSPECIFIED),
+                        ImageSizing.makeMeasureSpec(size, ImageSizing.AT_MOST),
+                        true, 1920, 1080, ImageSizing.INVALID_ASPECT_RATIO,
+                        0, Integer.MAX_VALUE, 0, Integer.MAX_VALUE, 0, 0, 0, 0, 0, 0);
+            }
+        });
+    }
+
+    @Test
+    public void testComputeTransform() {
+        final float[] transform = new float[4];
+        final float[] matrix = new float[9];
+        assertNoAllocation(new Runnable() {
+            private int mScaleType;
+
+            @Override
+            public void run() {
+                final int scaleType = mScaleType++ & 7;
+                ImageSizing.computeTransform(400, 300, 200, 200, scaleType, transform);
+                ImageSizing.computeMatrix(300, 400, 200, 100, scaleType, matrix);
+            }
+        });
+    }
+
+    @Test
+    public void testMeasureCache() {
+        final MeasureCache cache = new MeasureCache();
+        assertNoAllocation(new Runnable() {
+            private int mSize;
+
+            @Override
+            public void run() {
+                // A layout pass which measures twice with the same specs, then a new size
+                final int widthSpec = ImageSizing.makeMeasureSpec(300 + (mSize++ & 1),
+                        ImageSizing.EXACTLY);
+                final int heightSpec = ImageSizing.makeMeasureSpec(0, ImageSizing.UNSPECIFIED);
+                for (int i = 0; i < 2; i++) {
+                    if (!cache.update(widthSpec, heightSpec, true, 1920, 1080,
+                            ImageSizing.ASPECT_RATIO_OF_DRAWABLE, 0, Integer.MAX_VALUE,
+                            0, Integer.MAX_VALUE, 0, 0, 0, 0, 0, 0)) {
+                        cache.setResult(300, 169);
+                    }
+                }
+                cache.onLayout();
+            }
+        });
+    }
+}
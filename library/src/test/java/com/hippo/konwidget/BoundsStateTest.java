@@ -0,0 +1,70 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.konwidget;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BoundsStateTest {
+
+    private BoundsState mState;
+    private Object mContent;
+
+    @Before
+    public void setUp() {
+        mState = new BoundsState();
+        mContent = new Object();
+    }
+
+    @Test
+    public void testFirstUpdateConfigures() {
+        assertTrue(mState.update(mContent, 100, 50, 200, 200, AdvImageView.SCALE_TYPE_FIT_CENTER));
+    }
+
+    @Test
+    public void testUnchangedLayoutPassesSkip() {
+        assertTrue(mState.update(mContent, 100, 50, 200, 200, AdvImageView.SCALE_TYPE_FIT_CENTER));
+        for (int i = 0; i < 10; i++) {
+            assertFalse(mState.update(mContent, 100, 50, 200, 200, AdvImageView.SCALE_TYPE_FIT_CENTER));
+        }
+    }
+
+    @Test
+    public void testAnyChangedInputConfigures() {
+        final int scaleType = AdvImageView.SCALE_TYPE_FIT_CENTER;
+        mState.update(mContent, 100, 50, 200, 200, scaleType);
+        assertTrue(mState.update(new Object(), 100, 50, 200, 200, scaleType));
+        assertTrue(mState.update(mContent, 100, 50, 200, 200, scaleType));
+        assertTrue(mState.update(mContent, 101, 50, 200, 200, scaleType));
+        assertTrue(mState.update(mContent, 101, 51, 200, 200, scaleType));
+        assertTrue(mState.update(mContent, 101, 51, 201, 200, scaleType));
+        assertTrue(mState.update(mContent, 101, 51, 201, 201, scaleType));
+        assertTrue(mState.update(mContent, 101, 51, 201, 201, AdvImageView.SCALE_TYPE_CENTER_CROP));
+        assertFalse(mState.update(mContent, 101, 51, 201, 201, AdvImageView.SCALE_TYPE_CENTER_CROP));
+    }
+
+    @Test
+    public void testResetConfiguresAgain() {
+        mState.update(mContent, 100, 50, 200, 200, AdvImageView.SCALE_TYPE_MATRIX);
+        mState.reset();
+        assertTrue(mState.update(mContent, 100, 50, 200, 200, AdvImageView.SCALE_TYPE_MATRIX));
+        assertFalse(mState.update(mContent, 100, 50, 200, 200, AdvImageView.SCALE_TYPE_MATRIX));
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.konwidget;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DiskCacheTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static void write(File file, int size) throws IOException {
+        final FileOutputStream os = new FileOutputStream(file);
+        try {
+            os.write(new byte[size]);
+        } finally {
+            os.close();
+        }
+    }
+
+    private static void put(DiskCache cache, String key, int size) throws IOException {
+        final File file = cache.beginEdit(key);
+        assertNotNull(file);
+        write(file, size);
+        cache.commitEdit(key, true);
+    }
+
+    @Test
+    public void testPutAndGet() throws IOException {
+        final DiskCache cache = DiskCache.open(mFolder.getRoot(), 100);
+        assertNull(cache.get("a"));
+        put(cache, "a", 10);
+        final File file = cache.get("a");
+        assertNotNull(file);
+        assertEquals(10, file.length());
+        assertEquals(10, cache.size());
+        cache.close();
+    }
+
+    @Test
+    public void testAbortedEditIsDiscarded() throws IOException {
+        final DiskCache cache = DiskCache.open(mFolder.getRoot(), 100);
+        write(cache.beginEdit("a"), 10);
+        cache.commitEdit("a", false);
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+        cache.close();
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws IOException {
+        final DiskCache cache = DiskCache.open(mFolder.getRoot(), 30);
+        put(cache, "a", 10);
+        put(cache, "b", 10);
+        put(cache, "c", 10);
+        // Touch a, so b is the eldest
+        assertNotNull(cache.get("a"));
+        put(cache, "d", 10);
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+        assertNotNull(cache.get("d"));
+        assertEquals(30, cache.size());
+        cache.close();
+    }
+
+    @Test
+    public void testReopenRestoresEntriesAndOrder() throws IOException {
+        DiskCache cache = DiskCache.open(mFolder.getRoot(), 30);
+        put(cache, "a", 10);
+        put(cache, "b", 10);
+        put(cache, "c", 10);
+        assertNotNull(cache.get("a"));
+        cache.close();
+
+        cache = DiskCache.open(mFolder.getRoot(), 30);
+        assertEquals(30, cache.size());
+        put(cache, "d", 10);
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        cache.close();
+    }
+
+    @Test
+    public void testUnfinishedEditIsDeletedOnReopen() throws IOException {
+        DiskCache cache = DiskCache.open(mFolder.getRoot(), 100);
+        put(cache, "a", 10);
+        final File temp = cache.beginEdit("b");
+        write(temp, 10);
+        // Crash without commit
+        cache.close();
+
+        cache = DiskCache.open(mFolder.getRoot(), 100);
+        assertFalse(temp.exists());
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertEquals(10, cache.size());
+        cache.close();
+    }
+
+    @Test
+    public void testUntrackedFileIsDeletedOnReopen() throws IOException {
+        DiskCache cache = DiskCache.open(mFolder.getRoot(), 100);
+        put(cache, "a", 10);
+        cache.close();
+
+        // Renamed by a commit which crashed before the journal line
+        final File untracked = new File(mFolder.getRoot(), "b");
+        write(untracked, 10);
+
+        cache = DiskCache.open(mFolder.getRoot(), 100);
+        assertFalse(untracked.exists());
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertEquals(10, cache.size());
+        cache.close();
+    }
+
+    @Test
+    public void testCutLastJournalLineIsIgnored() throws IOException {
+        DiskCache cache = DiskCache.open(mFolder.getRoot(), 100);
+        put(cache, "a", 10);
+        cache.close();
+
+        final FileOutputStream os = new FileOutputStream(
+                new File(mFolder.getRoot(), DiskCache.JOURNAL_FILE), true);
+        try {
+            os.write("CLEAN b".getBytes("UTF-8"));
+        } finally {
+            os.close();
+        }
+
+        cache = DiskCache.open(mFolder.getRoot(), 100);
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        cache.close();
+    }
+
+    @Test
+    public void testCorruptedJournalStartsOver() throws IOException {
+        DiskCache cache = DiskCache.open(mFolder.getRoot(), 100);
+        put(cache, "a", 10);
+        cache.close();
+
+        write(new File(mFolder.getRoot(), DiskCache.JOURNAL_FILE), 10);
+
+        cache = DiskCache.open(mFolder.getRoot(), 100);
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+        cache.close();
+    }
+
+    @Test
+    public void testRemove() throws IOException {
+        final DiskCache cache = DiskCache.open(mFolder.getRoot(), 100);
+        put(cache, "a", 10);
+        assertTrue(cache.remove("a"));
+        assertFalse(cache.remove("a"));
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+        cache.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidKey() throws IOException {
+        final DiskCache cache = DiskCache.open(mFolder.getRoot(), 100);
+        try {
+            cache.get("A B");
+        } finally {
+            cache.close();
+        }
+    }
+}
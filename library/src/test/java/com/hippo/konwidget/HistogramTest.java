@@ -0,0 +1,99 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.konwidget;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistogramTest {
+
+    private Histogram mHistogram;
+
+    @Before
+    public void setUp() {
+        mHistogram = new Histogram();
+    }
+
+    @Test
+    public void testEmpty() {
+        assertEquals(0, mHistogram.getCount());
+        assertEquals(0, mHistogram.getMin());
+        assertEquals(0, mHistogram.getMax());
+        assertEquals(0, mHistogram.getValueAtPercentile(50));
+    }
+
+    @Test
+    public void testBucketsAreContinuous() {
+        for (long value = 0; value < 100000; value++) {
+            final int index = Histogram.getIndex(value);
+            assertTrue(value <= Histogram.getUpperBound(index));
+            if (index > 0) {
+                assertTrue(value > Histogram.getUpperBound(index - 1));
+            }
+        }
+        assertEquals(Long.MAX_VALUE, Histogram.getUpperBound(Histogram.getIndex(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void testSmallValuesAreExact() {
+        for (int i = 1; i <= 20; i++) {
+            mHistogram.record(i);
+        }
+        assertEquals(20, mHistogram.getCount());
+        assertEquals(210, mHistogram.getSum());
+        assertEquals(1, mHistogram.getMin());
+        assertEquals(20, mHistogram.getMax());
+        assertEquals(10, mHistogram.getValueAtPercentile(50));
+        assertEquals(18, mHistogram.getValueAtPercentile(90));
+        assertEquals(20, mHistogram.getValueAtPercentile(100));
+        assertEquals(1, mHistogram.getValueAtPercentile(0));
+    }
+
+    @Test
+    public void testLargeValuesWithinError() {
+        for (long value = 1000; value <= 1000000; value += 1000) {
+            mHistogram.record(value);
+        }
+        final long p50 = mHistogram.getValueAtPercentile(50);
+        final long p99 = mHistogram.getValueAtPercentile(99);
+        assertTrue(p50 >= 500000 && p50 <= 500000 * 1.07);
+        assertTrue(p99 >= 990000 && p99 <= 1000000);
+    }
+
+    @Test
+    public void testNegativeAsZero() {
+        mHistogram.record(-5);
+        assertEquals(0, mHistogram.getMax());
+        assertEquals(0, mHistogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testCopyAndReset() {
+        mHistogram.record(100);
+        mHistogram.record(200);
+        final Histogram copy = mHistogram.copy();
+        mHistogram.reset();
+        assertEquals(0, mHistogram.getCount());
+        assertEquals(0, mHistogram.getValueAtPercentile(50));
+        assertEquals(2, copy.getCount());
+        assertEquals(300, copy.getSum());
+        assertEquals(200, copy.getValueAtPercentile(100));
+    }
+}
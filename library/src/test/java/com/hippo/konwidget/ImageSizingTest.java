@@ -0,0 +1,168 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.konwidget;
+
+import org.junit.Test;
+
+import static com.hippo.konwidget.ImageSizing.AT_MOST;
+import static com.hippo.konwidget.ImageSizing.EXACTLY;
+import static com.hippo.konwidget.ImageSizing.UNSPECIFIED;
+import static com.hippo.konwidget.ImageSizing.makeMeasureSpec;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ImageSizingTest {
+
+    private static final float DELTA = 0.0001f;
+
+    private static long measure(int widthSpec, int heightSpec, boolean hasContent,
+            int contentWidth, int contentHeight, float aspectRatio, int maxHeight, int padding) {
+        return ImageSizing.measure(widthSpec, heightSpec, hasContent,
+                contentWidth, contentHeight, aspectRatio,
+                0, Integer.MAX_VALUE, 0, maxHeight, padding, padding, padding, padding, 0, 0);
+    }
+
+    private static void assertSize(int width, int height, long measured) {
+        assertEquals(width, ImageSizing.unpackWidth(measured));
+        assertEquals(height, ImageSizing.unpackHeight(measured));
+    }
+
+    @Test
+    public void testPack() {
+        final int tooSmall = 100 | ImageSizing.MEASURED_STATE_TOO_SMALL;
+        assertSize(tooSmall, 200, ImageSizing.pack(tooSmall, 200));
+        assertSize(0, tooSmall, ImageSizing.pack(0, tooSmall));
+    }
+
+    @Test
+    public void testExactly() {
+        assertSize(300, 400, measure(makeMeasureSpec(300, EXACTLY), makeMeasureSpec(400, EXACTLY),
+                true, 1920, 1080, ImageSizing.ASPECT_RATIO_OF_DRAWABLE, Integer.MAX_VALUE, 0));
+    }
+
+    @Test
+    public void testAspectRatioWithoutContent() {
+        assertSize(300, 200, measure(makeMeasureSpec(300, EXACTLY), makeMeasureSpec(0, UNSPECIFIED),
+                false, 0, 0, 1.5f, Integer.MAX_VALUE, 0));
+        // Padding is out of the aspect ratio
+        assertSize(320, 220, measure(makeMeasureSpec(320, EXACTLY), makeMeasureSpec(0, UNSPECIFIED),
+                false, 0, 0, 1.5f, Integer.MAX_VALUE, 10));
+    }
+
+    @Test
+    public void testAspectRatioOfDrawable() {
+        assertSize(720, 405, measure(makeMeasureSpec(720, EXACTLY), makeMeasureSpec(1280, AT_MOST),
+                true, 1920, 1080, ImageSizing.ASPECT_RATIO_OF_DRAWABLE, Integer.MAX_VALUE, 0));
+    }
+
+    @Test
+    public void testAspectRatioLimitedByMaxSize() {
+        assertSize(720, 300, measure(makeMeasureSpec(720, EXACTLY), makeMeasureSpec(1280, AT_MOST),
+                true, 1920, 1080, ImageSizing.ASPECT_RATIO_OF_DRAWABLE, 300, 0));
+    }
+
+    @Test
+    public void testWithoutAspectRatio() {
+        assertSize(120, 70, measure(makeMeasureSpec(0, UNSPECIFIED), makeMeasureSpec(0, UNSPECIFIED),
+                true, 100, 50, ImageSizing.INVALID_ASPECT_RATIO, Integer.MAX_VALUE, 10));
+        assertSize(80 | ImageSizing.MEASURED_STATE_TOO_SMALL, 50,
+                measure(makeMeasureSpec(80, AT_MOST), makeMeasureSpec(100, AT_MOST),
+                true, 100, 50, ImageSizing.INVALID_ASPECT_RATIO, Integer.MAX_VALUE, 0));
+    }
+
+    @Test
+    public void testResolveAdjustedSize() {
+        assertEquals(150, ImageSizing.resolveAdjustedSize(200, 0, 150, makeMeasureSpec(0, UNSPECIFIED)));
+        assertEquals(100, ImageSizing.resolveAdjustedSize(200, 0, 150, makeMeasureSpec(100, AT_MOST)));
+        assertEquals(50, ImageSizing.resolveAdjustedSize(20, 50, 150, makeMeasureSpec(100, AT_MOST)));
+        assertEquals(300, ImageSizing.resolveAdjustedSize(200, 0, 150, makeMeasureSpec(300, EXACTLY)));
+    }
+
+    private static float[] transform(int contentWidth, int contentHeight,
+            int viewWidth, int viewHeight, int scaleType, int expected) {
+        final float[] out = new float[4];
+        assertEquals(expected, ImageSizing.computeTransform(contentWidth, contentHeight,
+                viewWidth, viewHeight, scaleType, out));
+        return out;
+    }
+
+    @Test
+    public void testTransformWithoutMatrix() {
+        transform(-1, -1, 100, 100, ImageSizing.SCALE_TYPE_CENTER_CROP, ImageSizing.TRANSFORM_FILL);
+        transform(50, 80, 100, 100, ImageSizing.SCALE_TYPE_FIT_XY, ImageSizing.TRANSFORM_FILL);
+        transform(50, 80, 100, 100, ImageSizing.SCALE_TYPE_MATRIX, ImageSizing.TRANSFORM_MATRIX);
+        transform(100, 100, 100, 100, ImageSizing.SCALE_TYPE_CENTER_CROP, ImageSizing.TRANSFORM_NONE);
+    }
+
+    @Test
+    public void testTransformCenter() {
+        assertArrayEquals(new float[] {1.0f, 1.0f, 50.0f, 100.0f},
+                transform(100, 100, 200, 300, ImageSizing.SCALE_TYPE_CENTER,
+                ImageSizing.TRANSFORM_SCALE_TRANSLATE), DELTA);
+    }
+
+    @Test
+    public void testTransformCenterCrop() {
+        assertArrayEquals(new float[] {0.5f, 0.5f, -50.0f, 0.0f},
+                transform(400, 200, 100, 100, ImageSizing.SCALE_TYPE_CENTER_CROP,
+                ImageSizing.TRANSFORM_SCALE_TRANSLATE), DELTA);
+        assertArrayEquals(new float[] {0.5f, 0.5f, 0.0f, -50.0f},
+                transform(200, 400, 100, 100, ImageSizing.SCALE_TYPE_CENTER_CROP,
+                ImageSizing.TRANSFORM_SCALE_TRANSLATE), DELTA);
+    }
+
+    @Test
+    public void testTransformCenterInside() {
+        assertArrayEquals(new float[] {1.0f, 1.0f, 25.0f, 40.0f},
+                transform(50, 20, 100, 100, ImageSizing.SCALE_TYPE_CENTER_INSIDE,
+                ImageSizing.TRANSFORM_SCALE_TRANSLATE), DELTA);
+        assertArrayEquals(new float[] {0.25f, 0.25f, 0.0f, 25.0f},
+                transform(400, 200, 100, 100, ImageSizing.SCALE_TYPE_CENTER_INSIDE,
+                ImageSizing.TRANSFORM_SCALE_TRANSLATE), DELTA);
+    }
+
+    @Test
+    public void testTransformFit() {
+        assertArrayEquals(new float[] {0.5f, 0.5f, 0.0f, 0.0f},
+                transform(200, 100, 100, 100, ImageSizing.SCALE_TYPE_FIT_START,
+                ImageSizing.TRANSFORM_SCALE_TRANSLATE), DELTA);
+        assertArrayEquals(new float[] {0.5f, 0.5f, 0.0f, 25.0f},
+                transform(200, 100, 100, 100, ImageSizing.SCALE_TYPE_FIT_CENTER,
+                ImageSizing.TRANSFORM_SCALE_TRANSLATE), DELTA);
+        assertArrayEquals(new float[] {0.5f, 0.5f, 0.0f, 50.0f},
+                transform(200, 100, 100, 100, ImageSizing.SCALE_TYPE_FIT_END,
+                ImageSizing.TRANSFORM_SCALE_TRANSLATE), DELTA);
+        // Wider view, the extra space is horizontal
+        assertArrayEquals(new float[] {2.0f, 2.0f, 50.0f, 0.0f},
+                transform(50, 50, 200, 100, ImageSizing.SCALE_TYPE_FIT_CENTER,
+                ImageSizing.TRANSFORM_SCALE_TRANSLATE), DELTA);
+    }
+
+    @Test
+    public void testComputeMatrix() {
+        final float[] values = new float[9];
+        assertEquals(ImageSizing.TRANSFORM_SCALE_TRANSLATE, ImageSizing.computeMatrix(
+                400, 200, 100, 100, ImageSizing.SCALE_TYPE_CENTER_CROP, values));
+        assertArrayEquals(new float[] {0.5f, 0.0f, -50.0f, 0.0f, 0.5f, 0.0f, 0.0f, 0.0f, 1.0f},
+                values, DELTA);
+
+        assertEquals(ImageSizing.TRANSFORM_NONE, ImageSizing.computeMatrix(
+                100, 100, 100, 100, ImageSizing.SCALE_TYPE_CENTER, values));
+        assertArrayEquals(new float[] {1.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f, 0.0f, 0.0f, 1.0f},
+                values, DELTA);
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.konwidget;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LayoutPlannerTest {
+
+    @Test
+    public void testEmpty() {
+        final LayoutPlanner planner = new LayoutPlanner().setSpacing(4);
+        assertEquals(0, planner.planGrid(new float[0], 300, 3).getHeight());
+        assertEquals(0, planner.planJustifiedRows(new float[0], 300, 100).getHeight());
+        assertEquals(0, planner.planJustifiedRows(new float[0], 300, 100).getRowCount());
+    }
+
+    @Test
+    public void testGrid() {
+        final LayoutPlanner.Plan plan = new LayoutPlanner().setSpacing(10)
+                .planGrid(new float[] {1.0f, 2.0f, 0.5f, 1.0f}, 320, 3);
+
+        assertEquals(2, plan.getRowCount());
+        assertEquals(0, plan.getRowStart(0));
+        assertEquals(3, plan.getRowStart(1));
+
+        // 300 / 3 = 100 for each column
+        assertEquals(0, plan.getLeft(0));
+        assertEquals(110, plan.getLeft(1));
+        assertEquals(220, plan.getLeft(2));
+        assertEquals(100, plan.getWidth(2));
+        assertEquals(100, plan.getHeight(0));
+        assertEquals(50, plan.getHeight(1));
+        assertEquals(200, plan.getHeight(2));
+
+        // The first row is as tall as its tallest item
+        assertEquals(210, plan.getTop(3));
+        assertEquals(310, plan.getHeight());
+    }
+
+    @Test
+    public void testGridRemainder() {
+        final LayoutPlanner.Plan plan = new LayoutPlanner()
+                .planGrid(new float[] {1.0f, 1.0f, 1.0f}, 101, 3);
+        assertEquals(34, plan.getWidth(0));
+        assertEquals(34, plan.getWidth(1));
+        assertEquals(33, plan.getWidth(2));
+        assertEquals(68, plan.getLeft(2));
+    }
+
+    @Test
+    public void testGridMatchesMeasure() {
+        final LayoutPlanner planner = new LayoutPlanner()
+                .setPadding(4, 6, 4, 6).setMaxHeight(150);
+        final float[] ratios = {0.3f, 0.75f, 1.0f, 1.777f};
+        final LayoutPlanner.Plan plan = planner.planGrid(ratios, 200, 1);
+        for (int i = 0; i < ratios.length; i++) {
+            final long measured = ImageSizing.measure(
+                    ImageSizing.makeMeasureSpec(200, ImageSizing.EXACTLY),
+                    ImageSizing.makeMeasureSpec(0, ImageSizing.UNSPECIFIED),
+                    true, 192, Math.round(192 / ratios[i]), ratios[i],
+                    0, Integer.MAX_VALUE, 0, 150, 4, 6, 4, 6, 0, 0);
+            assertEquals(ImageSizing.unpackHeight(measured), plan.getHeight(i));
+        }
+        // Limited by the max height
+        assertEquals(150, plan.getHeight(0));
+        assertEquals(120, plan.getHeight(3));
+    }
+
+    @Test
+    public void testJustifiedRowsFillWidth() {
+        final float[] ratios = {1.5f, 0.75f, 1.0f, 1.333f, 1.5f, 0.6f, 2.0f, 1.0f, 1.2f};
+        final LayoutPlanner.Plan plan = new LayoutPlanner().setSpacing(4)
+                .planJustifiedRows(ratios, 600, 150);
+
+        assertTrue(plan.getRowCount() > 1);
+        for (int row = 0; row < plan.getRowCount(); row++) {
+            final int start = plan.getRowStart(row);
+            final int end = row + 1 < plan.getRowCount() ? plan.getRowStart(row + 1) : ratios.length;
+            int left = 0;
+            for (int i = start; i < end; i++) {
+                assertEquals(left, plan.getLeft(i));
+                assertEquals(plan.getTop(start), plan.getTop(i));
+                assertEquals(plan.getHeight(start), plan.getHeight(i));
+                // The aspect ratio is kept within rounding
+                assertEquals(ratios[i], (float) plan.getWidth(i) / plan.getHeight(i), 0.05f);
+                left += plan.getWidth(i) + 4;
+            }
+            if (row != plan.getRowCount() - 1) {
+                assertEquals(600, left - 4);
+            } else {
+                assertTrue(left - 4 <= 600);
+            }
+        }
+    }
+
+    @Test
+    public void testJustifiedRowsLastRowNotStretched() {
+        final LayoutPlanner.Plan plan = new LayoutPlanner()
+                .planJustifiedRows(new float[] {1.0f}, 1000, 100);
+        assertEquals(1, plan.getRowCount());
+        assertEquals(100, plan.getWidth(0));
+        assertEquals(100, plan.getHeight(0));
+    }
+
+    @Test
+    public void testJustifiedRowsPicksCloserHeight() {
+        // Two squares make 150, three make 100, which is the target
+        final LayoutPlanner.Plan plan = new LayoutPlanner()
+                .planJustifiedRows(new float[] {1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f}, 300, 100);
+        assertEquals(2, plan.getRowCount());
+        assertEquals(3, plan.getRowStart(1));
+        assertEquals(100, plan.getHeight(0));
+        assertEquals(200, plan.getHeight());
+    }
+
+    @Test
+    public void testJustifiedRowsMaxHeightAndPadding() {
+        final LayoutPlanner.Plan plan = new LayoutPlanner()
+                .setPadding(5, 5, 5, 5).setMaxHeight(60)
+                .planJustifiedRows(new float[] {4.0f, 1.0f}, 300, 300);
+        // A 4:1 image alone would be 290 / 4 + 10 = 82, over the max height
+        assertEquals(60, plan.getHeight(0));
+        assertEquals(50 * 4 + 10, plan.getWidth(0));
+        assertEquals(ImageSizing.makeMeasureSpec(60, ImageSizing.EXACTLY),
+                plan.getHeightMeasureSpec(0));
+    }
+
+    @Test
+    public void testJustifiedRowsMinHeightFitsWidth() {
+        final float[] ratios = {2.0f, 2.0f, 2.0f};
+        final LayoutPlanner.Plan plan = new LayoutPlanner().setSpacing(10).setMinHeight(100)
+                .planJustifiedRows(ratios, 400, 50);
+        assertEquals(1, plan.getRowCount());
+        assertEquals(100, plan.getHeight(0));
+        // 3 * 200 + 20 would overflow, narrowed to fit
+        final int last = ratios.length - 1;
+        assertEquals(400, plan.getLeft(last) + plan.getWidth(last));
+        for (int i = 0; i < ratios.length; i++) {
+            assertTrue(plan.getWidth(i) <= 200);
+        }
+    }
+
+    @Test
+    public void testJustifiedRowsMaxWidth() {
+        // A panorama between two squares
+        final float[] ratios = {1.0f, 8.0f, 1.0f};
+        final LayoutPlanner.Plan plan = new LayoutPlanner().setMaxWidth(300)
+                .planJustifiedRows(ratios, 600, 150);
+        assertEquals(1, plan.getRowCount());
+        assertEquals(300, plan.getWidth(1));
+        // The squares share the rest
+        assertEquals(150, plan.getHeight(0));
+        assertEquals(150, plan.getWidth(0));
+        assertEquals(600, plan.getLeft(2) + plan.getWidth(2));
+    }
+
+    @Test
+    public void testGridMaxWidth() {
+        final LayoutPlanner.Plan plan = new LayoutPlanner().setSpacing(10).setMaxWidth(80)
+                .planGrid(new float[] {1.0f, 1.0f}, 210, 2);
+        assertEquals(80, plan.getWidth(0));
+        assertEquals(80, plan.getHeight(0));
+        // Columns keep their width
+        assertEquals(110, plan.getLeft(1));
+    }
+}
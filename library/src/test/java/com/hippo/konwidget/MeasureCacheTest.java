@@ -0,0 +1,103 @@
+/*
+ * Copyright 2016 Hippo Seven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hippo.konwidget;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MeasureCacheTest {
+
+    private MeasureCache mCache;
+
+    @Before
+    public void setUp() {
+        mCache = new MeasureCache();
+    }
+
+    private boolean update(int widthSpec, int contentWidth, float aspectRatio, int paddingLeft) {
+        return mCache.update(widthSpec, 200, true, contentWidth, 50, aspectRatio,
+                0, Integer.MAX_VALUE, 0, Integer.MAX_VALUE, paddingLeft, 0, 0, 0, 0, 0);
+    }
+
+    @Test
+    public void testNoResultAtFirst() {
+        assertFalse(update(100, 100, 0.0f, 0));
+    }
+
+    @Test
+    public void testSameInputsHit() {
+        assertFalse(update(100, 100, 0.0f, 0));
+        mCache.setResult(100, 50);
+        assertTrue(update(100, 100, 0.0f, 0));
+        assertTrue(update(100, 100, 0.0f, 0));
+        assertEquals(100, mCache.getMeasuredWidth());
+        assertEquals(50, mCache.getMeasuredHeight());
+    }
+
+    @Test
+    public void testChangedInputsMiss() {
+        update(100, 100, 0.0f, 0);
+        mCache.setResult(100, 50);
+        assertFalse(update(101, 100, 0.0f, 0));
+        mCache.setResult(101, 50);
+        assertFalse(update(101, 99, 0.0f, 0));
+        mCache.setResult(101, 50);
+        assertFalse(update(101, 99, 1.5f, 0));
+        mCache.setResult(101, 50);
+        assertFalse(update(101, 99, 1.5f, 8));
+    }
+
+    @Test
+    public void testMissWithoutResultStaysMiss() {
+        update(100, 100, 0.0f, 0);
+        mCache.setResult(100, 50);
+        assertFalse(update(101, 100, 0.0f, 0));
+        // The measurement for 101 didn't finish
+        assertFalse(update(101, 100, 0.0f, 0));
+    }
+
+    @Test
+    public void testCanRemeasureWithOneSpecs() {
+        assertFalse(mCache.canRemeasure());
+        update(100, 100, 0.0f, 0);
+        mCache.setResult(100, 50);
+        update(100, 100, 0.0f, 0);
+        mCache.onLayout();
+        assertTrue(mCache.canRemeasure());
+        assertEquals(100, mCache.getWidthMeasureSpec());
+        assertEquals(200, mCache.getHeightMeasureSpec());
+    }
+
+    @Test
+    public void testCantRemeasureWithVariedSpecs() {
+        update(0, 100, 0.0f, 0);
+        mCache.setResult(100, 50);
+        update(300, 100, 0.0f, 0);
+        mCache.setResult(300, 50);
+        mCache.onLayout();
+        assertFalse(mCache.canRemeasure());
+
+        // Next pass with one specs
+        update(300, 100, 0.0f, 0);
+        mCache.onLayout();
+        assertTrue(mCache.canRemeasure());
+    }
+}